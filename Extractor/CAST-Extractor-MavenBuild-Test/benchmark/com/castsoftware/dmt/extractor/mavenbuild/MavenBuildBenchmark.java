@@ -0,0 +1,511 @@
+package com.castsoftware.dmt.extractor.mavenbuild;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The {@link MavenBuildBenchmark} class is the end to end throughput benchmark of the {@link MavenBuildExtractor}. <BR>
+ * For each requested delivery size it generates a synthetic drop folder with the {@link SyntheticDeliveryGenerator},
+ * runs {@link MavenBuildExtractor#extract} on it and reports the archives/s, entries/s, MB/s, peak memory and GC
+ * time of the run. The results are written as JSON so that runs of different versions can be compared. <BR>
+ * With --shards N, each extraction is run by N local processes sharing the delivery, and the shard manifests are
+ * checked once they are all done. <BR>
+ * Usage: MavenBuildBenchmark [--sizes 10,100,1000] [--entries 50] [--entry-size 4096] [--depth 2] [--iterations 3]
+ * [--seed 42] [--shards 1] [--work folder] [--label name] [--output results.json]
+ */
+public class MavenBuildBenchmark
+{
+    private static final double MB = 1024.0 * 1024.0;
+
+    private int[] sizes = { 10, 100, 1000 };
+    private int entriesPerArchive = 50;
+    private int entrySize = 4096;
+    private int folderDepth = 2;
+    private int iterations = 3;
+    private long seed = 42;
+    private File workFolder = new File(System.getProperty("java.io.tmpdir"), "dmtmavenbuildbenchmark");
+    private String label = "";
+    private File outputFile = null;
+    private int shards = 1;
+    /** The shard extracted when the benchmark runs as one of the processes of a sharded extraction */
+    private int extractedShard = -1;
+    private File shardDeliveryFolder = null;
+    private File shardContentFolder = null;
+
+    public static void main(String[] args) throws Exception
+    {
+        MavenBuildBenchmark benchmark = new MavenBuildBenchmark();
+        benchmark.parseArguments(args);
+        if (benchmark.extractedShard >= 0)
+        {
+            runExtraction(benchmark.shardDeliveryFolder, benchmark.shardContentFolder);
+            return;
+        }
+        String json = benchmark.run();
+        if (benchmark.outputFile == null)
+            System.out.println(json);
+        else
+        {
+            Writer writer = new OutputStreamWriter(new FileOutputStream(benchmark.outputFile), Charset.forName("UTF-8"));
+            try
+            {
+                writer.write(json);
+            }
+            finally
+            {
+                writer.close();
+            }
+        }
+    }
+
+    private void parseArguments(String[] args)
+    {
+        for (int i = 0; i + 1 < args.length; i += 2)
+        {
+            String name = args[i];
+            String value = args[i + 1];
+            if ("--sizes".equals(name))
+            {
+                String[] values = value.split(",");
+                sizes = new int[values.length];
+                for (int j = 0; j < values.length; j++)
+                    sizes[j] = Integer.parseInt(values[j].trim());
+            }
+            else if ("--entries".equals(name))
+                entriesPerArchive = Integer.parseInt(value);
+            else if ("--entry-size".equals(name))
+                entrySize = Integer.parseInt(value);
+            else if ("--depth".equals(name))
+                folderDepth = Integer.parseInt(value);
+            else if ("--iterations".equals(name))
+                iterations = Integer.parseInt(value);
+            else if ("--seed".equals(name))
+                seed = Long.parseLong(value);
+            else if ("--work".equals(name))
+                workFolder = new File(value);
+            else if ("--label".equals(name))
+                label = value;
+            else if ("--output".equals(name))
+                outputFile = new File(value);
+            else if ("--shards".equals(name))
+                shards = Integer.parseInt(value);
+            else if ("--extract-shard".equals(name))
+                extractedShard = Integer.parseInt(value);
+            else if ("--delivery".equals(name))
+                shardDeliveryFolder = new File(value);
+            else if ("--content".equals(name))
+                shardContentFolder = new File(value);
+            else
+                throw new IllegalArgumentException("Unknown argument: " + name);
+        }
+    }
+
+    private String run() throws Exception
+    {
+        List<Map<String, Object>> results = new ArrayList<Map<String, Object>>();
+        for (int size : sizes)
+        {
+            File deliveryFolder = new File(workFolder, "delivery-" + size);
+            deleteFolder(deliveryFolder);
+            SyntheticDeliveryGenerator generator = new SyntheticDeliveryGenerator().setNbArchives(size)
+                .setEntriesPerArchive(entriesPerArchive).setEntrySize(entrySize).setFolderDepth(folderDepth)
+                .setSeed(seed);
+            generator.generate(deliveryFolder);
+            long inputBytes = getFolderSize(deliveryFolder);
+
+            for (int iteration = 0; iteration < iterations; iteration++)
+            {
+                File contentFolder = new File(workFolder, "content-" + size);
+                deleteFolder(contentFolder);
+                contentFolder.mkdirs();
+
+                Map<String, Object> result = shards > 1 ? runShardedExtraction(deliveryFolder, contentFolder)
+                    : runExtraction(deliveryFolder, contentFolder);
+                long[] output = new long[2];
+                countOutputFiles(contentFolder, output);
+                double seconds = ((Double) result.get("elapsedMillis")).doubleValue() / 1000.0;
+
+                Map<String, Object> measure = new LinkedHashMap<String, Object>();
+                measure.put("archives", Integer.valueOf(generator.getNbGeneratedArchives()));
+                measure.put("iteration", Integer.valueOf(iteration));
+                measure.put("generatedEntries", Long.valueOf(generator.getNbGeneratedEntries()));
+                measure.put("generatedBytes", Long.valueOf(generator.getGeneratedBytes()));
+                measure.put("inputBytes", Long.valueOf(inputBytes));
+                measure.put("outputFiles", Long.valueOf(output[0]));
+                measure.put("outputBytes", Long.valueOf(output[1]));
+                measure.putAll(result);
+                measure.put("archivesPerSecond", Double.valueOf(generator.getNbGeneratedArchives() / seconds));
+                measure.put("entriesPerSecond", Double.valueOf(output[0] / seconds));
+                measure.put("inputMBPerSecond", Double.valueOf(inputBytes / MB / seconds));
+                measure.put("outputMBPerSecond", Double.valueOf(output[1] / MB / seconds));
+                results.add(measure);
+                deleteFolder(contentFolder);
+            }
+            deleteFolder(deliveryFolder);
+        }
+
+        Map<String, Object> report = new LinkedHashMap<String, Object>();
+        report.put("label", label);
+        report.put("javaVersion", System.getProperty("java.version"));
+        report.put("availableProcessors", Integer.valueOf(Runtime.getRuntime().availableProcessors()));
+        report.put("maxHeapBytes", Long.valueOf(Runtime.getRuntime().maxMemory()));
+        report.put("entriesPerArchive", Integer.valueOf(entriesPerArchive));
+        report.put("entrySize", Integer.valueOf(entrySize));
+        report.put("folderDepth", Integer.valueOf(folderDepth));
+        report.put("seed", Long.valueOf(seed));
+        report.put("shards", Integer.valueOf(shards));
+        report.put("runs", results);
+        StringBuilder json = new StringBuilder();
+        appendJson(json, report, "");
+        json.append("\n");
+        return json.toString();
+    }
+
+    private static Map<String, Object> runExtraction(File deliveryFolder, File contentFolder) throws Exception
+    {
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+            pool.resetPeakUsage();
+        long gcTime = getGcTime();
+        long gcCount = getGcCount();
+
+        MavenBuildExtractor extractor = new MavenBuildExtractor();
+        MavenBuildExtractor.IConfiguration configuration = createProxy(MavenBuildExtractor.IConfiguration.class,
+            "getURL", deliveryFolder.getAbsolutePath());
+        MavenBuildExtractor.ISourceRoot root = createProxy(MavenBuildExtractor.ISourceRoot.class,
+            "getContentDirectoryFile", contentFolder);
+        MavenBuildExtractor.IRootFactory rootFactory = createProxy(MavenBuildExtractor.IRootFactory.class, null, null);
+
+        long start = System.nanoTime();
+        extractor.connect(deliveryFolder.getAbsolutePath(), null, null, configuration);
+        extractor.extract(Collections.singletonList(root), rootFactory, configuration);
+        extractor.disconnect(configuration);
+        long elapsed = System.nanoTime() - start;
+
+        long heapPeak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null)
+                heapPeak += pool.getPeakUsage().getUsed();
+
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        result.put("elapsedMillis", Double.valueOf(elapsed / 1000000.0));
+        result.put("gcMillis", Long.valueOf(getGcTime() - gcTime));
+        result.put("gcCount", Long.valueOf(getGcCount() - gcCount));
+        result.put("peakHeapBytes", Long.valueOf(heapPeak));
+        result.put("peakRssBytes", Long.valueOf(getPeakRss()));
+        result.put("artifacts", Integer.valueOf(extractor.getNbArtifacts()));
+        result.put("catalogueEstimatedBytes", Long.valueOf(extractor.getCatalogueEstimatedBytes()));
+        if (extractor.getNbArtifacts() > 0)
+            result.put("catalogueEstimatedBytesPerArtifact",
+                Double.valueOf((double) extractor.getCatalogueEstimatedBytes() / extractor.getNbArtifacts()));
+        ArchivePrefetcher prefetcher = extractor.getPrefetcher();
+        if (prefetcher != null)
+        {
+            result.put("prefetchHits", Integer.valueOf(prefetcher.getHits()));
+            result.put("prefetchLateHits", Integer.valueOf(prefetcher.getLateHits()));
+            result.put("prefetchMisses", Integer.valueOf(prefetcher.getMisses()));
+            result.put("prefetchStallMillis", Long.valueOf(prefetcher.getStallMillis()));
+            result.put("prefetchedBytes", Long.valueOf(prefetcher.getPrefetchedBytes()));
+        }
+        return result;
+    }
+
+    /**
+     * Runs the extraction with one process per shard, each one extracting in its own sub folder of the content folder,
+     * and checks the shard manifests.
+     */
+    private Map<String, Object> runShardedExtraction(File deliveryFolder, File contentFolder) throws Exception
+    {
+        File manifestFolder = new File(contentFolder.getParentFile(), contentFolder.getName() + "-manifests");
+        deleteFolder(manifestFolder);
+
+        long start = System.nanoTime();
+        List<Process> processes = new ArrayList<Process>();
+        for (int shard = 0; shard < shards; shard++)
+        {
+            List<String> command = new ArrayList<String>();
+            command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            for (String name : System.getProperties().stringPropertyNames())
+                if (name.startsWith(MavenBuildSettings.PREFIX) && !name.startsWith(MavenBuildSettings.PREFIX + "shard."))
+                    command.add("-D" + name + "=" + System.getProperty(name));
+            command.add("-D" + MavenBuildSettings.PREFIX + "shard.count=" + shards);
+            command.add("-D" + MavenBuildSettings.PREFIX + "shard.index=" + shard);
+            command.add("-D" + MavenBuildSettings.PREFIX + "shard.manifestFolder=" + manifestFolder.getAbsolutePath());
+            command.add(MavenBuildBenchmark.class.getName());
+            command.add("--extract-shard");
+            command.add(String.valueOf(shard));
+            command.add("--delivery");
+            command.add(deliveryFolder.getAbsolutePath());
+            command.add("--content");
+            File shardFolder = new File(contentFolder, "shard-" + shard);
+            shardFolder.mkdirs();
+            command.add(shardFolder.getAbsolutePath());
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            drain(process.getInputStream());
+            processes.add(process);
+        }
+        int failures = 0;
+        for (Process process : processes)
+            if (process.waitFor() != 0)
+                failures++;
+        long elapsed = System.nanoTime() - start;
+
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        result.put("elapsedMillis", Double.valueOf(elapsed / 1000000.0));
+        result.put("failedShards", Integer.valueOf(failures));
+        result.put("shardProblems", ShardManifest.check(manifestFolder));
+        deleteFolder(manifestFolder);
+        return result;
+    }
+
+    /**
+     * Discards the output of a shard process, so that it never blocks on a full pipe.
+     */
+    private static void drain(final InputStream inputStream)
+    {
+        Thread thread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                byte[] buf = new byte[8192];
+                try
+                {
+                    while (inputStream.read(buf) >= 0)
+                    {
+                        // NOP
+                    }
+                }
+                catch (IOException e)
+                {
+                    // NOP
+                }
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Creates an implementation of a DMT interface answering the given value for the given method and a neutral value
+     * for all the other methods.
+     */
+    private static <T> T createProxy(Class<T> type, final String methodName, final Object value)
+    {
+        InvocationHandler handler = new InvocationHandler()
+        {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args)
+            {
+                if (method.getName().equals(methodName))
+                    return value;
+                if (method.getName().equals("toString"))
+                    return methodName + "=" + value;
+                if (method.getName().equals("hashCode"))
+                    return Integer.valueOf(System.identityHashCode(proxy));
+                if (method.getName().equals("equals"))
+                    return Boolean.valueOf(proxy == args[0]);
+                Class<?> returnType = method.getReturnType();
+                if (returnType == boolean.class)
+                    return Boolean.FALSE;
+                if (returnType == int.class)
+                    return Integer.valueOf(0);
+                if (returnType == long.class)
+                    return Long.valueOf(0);
+                return null;
+            }
+        };
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, handler));
+    }
+
+    private static long getGcTime()
+    {
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            time += Math.max(0, gc.getCollectionTime());
+        return time;
+    }
+
+    private static long getGcCount()
+    {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            count += Math.max(0, gc.getCollectionCount());
+        return count;
+    }
+
+    /**
+     * @return the peak resident set size of the process, or -1 when the platform does not expose it
+     */
+    private static long getPeakRss()
+    {
+        File status = new File("/proc/self/status");
+        if (!status.exists())
+            return -1;
+        try
+        {
+            BufferedReader reader = new BufferedReader(new FileReader(status));
+            try
+            {
+                for (String line = reader.readLine(); line != null; line = reader.readLine())
+                {
+                    if (line.startsWith("VmHWM:"))
+                    {
+                        String value = line.substring("VmHWM:".length()).trim();
+                        return Long.parseLong(value.substring(0, value.indexOf(' '))) * 1024;
+                    }
+                }
+            }
+            finally
+            {
+                reader.close();
+            }
+        }
+        catch (IOException e)
+        {
+            // NOP
+        }
+        return -1;
+    }
+
+    private static long getFolderSize(File folder)
+    {
+        long[] counts = new long[2];
+        countFiles(folder, counts);
+        return counts[1];
+    }
+
+    /**
+     * Counts the extracted files, without the summaries the extractor may write at the root of the content directory,
+     * so that the runs stay comparable whatever summaries are enabled.
+     */
+    private static void countOutputFiles(File contentFolder, long[] counts)
+    {
+        File[] files = contentFolder.listFiles();
+        if (files == null)
+            return;
+        for (File f : files)
+        {
+            if (f.isDirectory())
+                countFiles(f, counts);
+            else if (!isSummaryFile(f.getName()))
+            {
+                counts[0]++;
+                counts[1] += f.length();
+            }
+        }
+    }
+
+    private static boolean isSummaryFile(String name)
+    {
+        return name.equals(ModuleStatistics.FILENAME) || name.equals(ModuleGraph.FILENAME)
+            || name.equals(ModuleGraph.REACTOR_POM) || name.startsWith("shard-") && name.endsWith(".manifest");
+    }
+
+    private static void countFiles(File folder, long[] counts)
+    {
+        File[] files = folder.listFiles();
+        if (files == null)
+            return;
+        for (File f : files)
+        {
+            if (f.isDirectory())
+                countFiles(f, counts);
+            else
+            {
+                counts[0]++;
+                counts[1] += f.length();
+            }
+        }
+    }
+
+    private static void deleteFolder(File folder)
+    {
+        File[] files = folder.listFiles();
+        if (files != null)
+            for (File f : files)
+                deleteFolder(f);
+        folder.delete();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void appendJson(StringBuilder json, Object value, String indent)
+    {
+        if (value instanceof Map)
+        {
+            json.append("{");
+            String separator = "\n";
+            for (Map.Entry<String, Object> entry : ((Map<String, Object>) value).entrySet())
+            {
+                json.append(separator).append(indent).append("  ");
+                appendJson(json, entry.getKey(), indent);
+                json.append(": ");
+                appendJson(json, entry.getValue(), indent + "  ");
+                separator = ",\n";
+            }
+            json.append("\n").append(indent).append("}");
+        }
+        else if (value instanceof List)
+        {
+            json.append("[");
+            String separator = "\n";
+            for (Object item : (List<Object>) value)
+            {
+                json.append(separator).append(indent).append("  ");
+                appendJson(json, item, indent + "  ");
+                separator = ",\n";
+            }
+            json.append("\n").append(indent).append("]");
+        }
+        else if (value instanceof Double)
+        {
+            double d = ((Double) value).doubleValue();
+            if (Double.isNaN(d) || Double.isInfinite(d))
+                json.append("null");
+            else
+                json.append(String.format(Locale.ROOT, "%.3f", Double.valueOf(d)));
+        }
+        else if (value instanceof Number || value instanceof Boolean)
+            json.append(value);
+        else if (value == null)
+            json.append("null");
+        else
+        {
+            json.append('"');
+            String s = value.toString();
+            for (int i = 0; i < s.length(); i++)
+            {
+                char c = s.charAt(i);
+                if (c == '"' || c == '\\')
+                    json.append('\\').append(c);
+                else if (c < 0x20)
+                    json.append(String.format("\\u%04x", Integer.valueOf(c)));
+                else
+                    json.append(c);
+            }
+            json.append('"');
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package com.castsoftware.dmt.extractor.mavenbuild;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * The {@link SyntheticDeliveryGenerator} class builds a synthetic drop folder shaped like the deliveries handled by the
+ * {@link MavenBuildExtractor}: DAR, EAR, WAR and JAR files spread over nested sub folders, with their matching jars and
+ * the .pom.xml siblings of the jars delivered alone. <BR>
+ * The content is generated from a fixed seed so two runs with the same parameters produce the same delivery.
+ */
+class SyntheticDeliveryGenerator
+{
+    private static final String[] WORDS = { "public", "private", "final", "return", "import", "class", "void",
+        "String", "int", "new", "this", "null", "if", "else", "for", "while", "static", "extends", "implements",
+        "throws", "try", "catch" };
+
+    private int nbArchives = 100;
+    private int entriesPerArchive = 50;
+    private int entrySize = 4096;
+    private int folderDepth = 2;
+    private int foldersPerLevel = 3;
+    private long seed = 42;
+
+    private int nbGeneratedArchives;
+    private long nbGeneratedEntries;
+    private long generatedBytes;
+
+    public SyntheticDeliveryGenerator setNbArchives(int nbArchives)
+    {
+        this.nbArchives = nbArchives;
+        return this;
+    }
+
+    public SyntheticDeliveryGenerator setEntriesPerArchive(int entriesPerArchive)
+    {
+        this.entriesPerArchive = entriesPerArchive;
+        return this;
+    }
+
+    public SyntheticDeliveryGenerator setEntrySize(int entrySize)
+    {
+        this.entrySize = entrySize;
+        return this;
+    }
+
+    public SyntheticDeliveryGenerator setFolderDepth(int folderDepth)
+    {
+        this.folderDepth = folderDepth;
+        return this;
+    }
+
+    public SyntheticDeliveryGenerator setFoldersPerLevel(int foldersPerLevel)
+    {
+        this.foldersPerLevel = foldersPerLevel;
+        return this;
+    }
+
+    public SyntheticDeliveryGenerator setSeed(long seed)
+    {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * @return the number of archive files written at the top level of the delivery
+     */
+    public int getNbGeneratedArchives()
+    {
+        return nbGeneratedArchives;
+    }
+
+    /**
+     * @return the number of file entries written in the archives, nested archives included
+     */
+    public long getNbGeneratedEntries()
+    {
+        return nbGeneratedEntries;
+    }
+
+    /**
+     * @return the uncompressed size of the generated entries
+     */
+    public long getGeneratedBytes()
+    {
+        return generatedBytes;
+    }
+
+    /**
+     * Generates the delivery in the given folder. The archives are distributed in a round robin way: one DAR, one EAR,
+     * one WAR and then jars alone, every container getting its matching jar.
+     *
+     * @param rootFolder
+     *            the folder to fill, created when needed
+     * @throws IOException
+     *             when a file cannot be written
+     */
+    public void generate(File rootFolder) throws IOException
+    {
+        Random random = new Random(seed);
+        nbGeneratedArchives = 0;
+        nbGeneratedEntries = 0;
+        generatedBytes = 0;
+        rootFolder.mkdirs();
+
+        for (int i = 0; nbGeneratedArchives < nbArchives; i++)
+        {
+            File folder = getFolder(rootFolder, random);
+            folder.mkdirs();
+            String name = "module" + i;
+            String version = "1.0." + (i % 10);
+            String fileBase = name + "-" + version;
+            switch (i % 5)
+            {
+                case 0:
+                    writeArchive(new File(folder, fileBase + ".dar"), createDar(name, version, random));
+                    break;
+                case 1:
+                    writeArchive(new File(folder, fileBase + ".ear"), createEar(name, version, random));
+                    break;
+                case 2:
+                    writeArchive(new File(folder, fileBase + ".war"), createWar(name, version, random));
+                    break;
+                default:
+                    writeArchive(new File(folder, fileBase + ".jar"), createJar(name, version, random));
+                    writePom(new File(folder, fileBase + ".pom.xml"), name, version, "jar");
+                    continue;
+            }
+            // the matching jar of the container
+            if (nbGeneratedArchives < nbArchives)
+                writeArchive(new File(folder, fileBase + "-sources.jar"), createJar(name, version, random));
+        }
+    }
+
+    private File getFolder(File rootFolder, Random random)
+    {
+        File folder = rootFolder;
+        int depth = folderDepth > 0 ? random.nextInt(folderDepth + 1) : 0;
+        for (int level = 0; level < depth; level++)
+            folder = new File(folder, "folder" + level + "_" + random.nextInt(foldersPerLevel));
+        return folder;
+    }
+
+    private void writeArchive(File file, byte[] content) throws IOException
+    {
+        OutputStream output = new FileOutputStream(file);
+        try
+        {
+            output.write(content);
+        }
+        finally
+        {
+            output.close();
+        }
+        nbGeneratedArchives++;
+    }
+
+    private void writePom(File file, String name, String version, String packaging) throws IOException
+    {
+        OutputStream output = new FileOutputStream(file);
+        try
+        {
+            output.write(createPom(name, version, packaging));
+        }
+        finally
+        {
+            output.close();
+        }
+    }
+
+    private byte[] createDar(String name, String version, Random random) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ZipOutputStream zip = new ZipOutputStream(bytes);
+        addEntry(zip, "META-INF/MANIFEST.MF", "Manifest-Version: 1.0\r\n".getBytes("UTF-8"));
+        addEntry(zip, "deployit-manifest.xml", ("<udm.DeploymentPackage application=\"" + name + "\" version=\""
+            + version + "\"/>").getBytes("UTF-8"));
+        addEntry(zip, name + "/" + name + "-" + version + ".ear", createEar(name, version, random));
+        zip.close();
+        return bytes.toByteArray();
+    }
+
+    private byte[] createEar(String name, String version, Random random) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ZipOutputStream zip = new ZipOutputStream(bytes);
+        addEntry(zip, "META-INF/application.xml", ("<application><module><web><web-uri>" + name + "-" + version
+            + ".war</web-uri></web></module></application>").getBytes("UTF-8"));
+        addEntry(zip, name + "-" + version + ".war", createWar(name, version, random));
+        zip.close();
+        return bytes.toByteArray();
+    }
+
+    private byte[] createWar(String name, String version, Random random) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ZipOutputStream zip = new ZipOutputStream(bytes);
+        zip.putNextEntry(new ZipEntry("WEB-INF/"));
+        zip.closeEntry();
+        zip.putNextEntry(new ZipEntry("WEB-INF/lib/"));
+        zip.closeEntry();
+        addEntry(zip, "WEB-INF/web.xml", "<web-app version=\"2.5\"/>".getBytes("UTF-8"));
+        addEntry(zip, "META-INF/maven/com.acme/" + name + "/pom.xml", createPom(name, version, "war"));
+        addEntry(zip, "WEB-INF/lib/" + name + "-lib-" + version + ".jar", createJar(name + "-lib", version, random));
+        for (int i = 0; i < entriesPerArchive / 2; i++)
+            addEntry(zip, "page" + i + ".jsp", createText(random));
+        zip.close();
+        return bytes.toByteArray();
+    }
+
+    private byte[] createJar(String name, String version, Random random) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ZipOutputStream zip = new ZipOutputStream(bytes);
+        addEntry(zip, "META-INF/MANIFEST.MF", "Manifest-Version: 1.0\r\n".getBytes("UTF-8"));
+        addEntry(zip, "META-INF/maven/com.acme/" + name + "/pom.xml", createPom(name, version, "jar"));
+        String packageFolder = "com/acme/" + name.replace('-', '_') + "/";
+        zip.putNextEntry(new ZipEntry(packageFolder));
+        zip.closeEntry();
+        for (int i = 0; i < entriesPerArchive; i++)
+            addEntry(zip, packageFolder + "Class" + i + ".java", createText(random));
+        zip.close();
+        return bytes.toByteArray();
+    }
+
+    private static byte[] createPom(String name, String version, String packaging) throws IOException
+    {
+        StringBuilder pom = new StringBuilder();
+        pom.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\r\n");
+        pom.append("<project>\r\n");
+        pom.append("<modelVersion>4.0.0</modelVersion>\r\n");
+        pom.append("<groupId>com.acme</groupId>\r\n");
+        pom.append("<artifactId>").append(name).append("</artifactId>\r\n");
+        pom.append("<version>").append(version).append("</version>\r\n");
+        pom.append("<packaging>").append(packaging).append("</packaging>\r\n");
+        pom.append("<dependencies>\r\n");
+        pom.append("<dependency><groupId>junit</groupId><artifactId>junit</artifactId></dependency>\r\n");
+        pom.append("</dependencies>\r\n");
+        pom.append("</project>\r\n");
+        return pom.toString().getBytes("UTF-8");
+    }
+
+    private byte[] createText(Random random) throws IOException
+    {
+        StringBuilder text = new StringBuilder(entrySize + 16);
+        int column = 0;
+        while (text.length() < entrySize)
+        {
+            String word = WORDS[random.nextInt(WORDS.length)];
+            text.append(word);
+            column += word.length();
+            if (column > 80)
+            {
+                text.append("\r\n");
+                column = 0;
+            }
+            else
+                text.append(' ');
+        }
+        text.setLength(entrySize);
+        return text.toString().getBytes("UTF-8");
+    }
+
+    private void addEntry(ZipOutputStream zip, String name, byte[] content) throws IOException
+    {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(content);
+        zip.closeEntry();
+        nbGeneratedEntries++;
+        generatedBytes += content.length;
+    }
+}
@@ -0,0 +1,198 @@
+package com.castsoftware.dmt.extractor.mavenbuild;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Test;
+
+public class ArchiveBudgetTest
+{
+    private static final String PREFIX = "cast.dmt.extractor.mavenbuild.";
+    private static final int MB = 1024 * 1024;
+
+    @Test
+    public void testTemporaryFileCharged() throws IOException
+    {
+        ArchiveBudget budget = new ArchiveBudget(4 * MB, 0, 0, 0, 0, 0, 0, 0);
+        budget.startArchive(new File("app-1.0.dar"));
+        File copy = new File("app-1.0.ear");
+        budget.onTemporaryFileCreated(copy);
+        OutputStream outputStream = new BudgetedOutputStream(new ByteArrayOutputStream(), budget, copy);
+        try
+        {
+            for (int i = 0; i < 5; i++)
+                outputStream.write(new byte[MB]);
+            fail("the copy of the nested archive is not charged");
+        }
+        catch (ArchiveBudget.ExceededException e)
+        {
+            assertTrue(e.getReason().startsWith("uncompressed bytes"));
+        }
+        assertNotNull(budget.getExceededReason());
+    }
+
+    @Test
+    public void testTemporaryFileReleased() throws IOException
+    {
+        ArchiveBudget budget = new ArchiveBudget(4 * MB, 0, 0, 0, 0, 6 * MB, 0, 0);
+        budget.startArchive(new File("app-1.0.dar"));
+        // each copy fits in the budget once the previous one has been removed
+        for (int i = 0; i < 3; i++)
+        {
+            File copy = new File("app-" + i + ".war");
+            budget.onTemporaryFileCreated(copy);
+            budget.onWrite(copy, 3 * MB);
+            budget.onTemporaryFileDeleted(copy);
+        }
+        File file = new File("A.java");
+        budget.onFileCreated(file);
+        budget.onWrite(file, MB);
+        assertNull(budget.getExceededReason());
+        assertNull(budget.getRunExceededReason());
+    }
+
+    @Test
+    public void testRatio() throws IOException
+    {
+        File archive = File.createTempFile("app", ".dar");
+        try
+        {
+            ArchiveBudget budget = new ArchiveBudget(0, 0, 100, 0, 0, 0, 0, 0);
+            budget.startArchive(archive);
+            File copy = new File("app-1.0.ear");
+            budget.onTemporaryFileCreated(copy);
+            try
+            {
+                budget.onWrite(copy, 2 * MB);
+                fail("the compression ratio of the nested archive copy is not checked");
+            }
+            catch (ArchiveBudget.ExceededException e)
+            {
+                assertTrue(e.getReason().startsWith("compression ratio"));
+            }
+        }
+        finally
+        {
+            archive.delete();
+        }
+    }
+
+    @Test
+    public void testNestedBomb() throws Exception
+    {
+        File folder = File.createTempFile("budget", "");
+        folder.delete();
+        File deliveryFolder = new File(folder, "delivery");
+        File contentFolder = new File(folder, "content");
+        deliveryFolder.mkdirs();
+        contentFolder.mkdirs();
+
+        // a small deflated DAR holding an EAR whose stored entry is never extracted, only its copy reaches the disk
+        ByteArrayOutputStream ear = new ByteArrayOutputStream();
+        ZipOutputStream earOutputStream = new ZipOutputStream(ear);
+        byte[] content = new byte[8 * MB];
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        ZipEntry entry = new ZipEntry("data.bin");
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(content.length);
+        entry.setCompressedSize(content.length);
+        entry.setCrc(crc.getValue());
+        earOutputStream.putNextEntry(entry);
+        earOutputStream.write(content);
+        earOutputStream.close();
+        File dar = new File(deliveryFolder, "app-1.0.dar");
+        ZipOutputStream darOutputStream = new ZipOutputStream(new FileOutputStream(dar));
+        darOutputStream.putNextEntry(new ZipEntry("app-1.0.ear"));
+        darOutputStream.write(ear.toByteArray());
+        darOutputStream.close();
+        assertTrue(dar.length() < MB);
+
+        System.setProperty(PREFIX + "archive.maxMB", "4");
+        System.setProperty(PREFIX + "index.enabled", "false");
+        try
+        {
+            MavenBuildExtractor extractor = new MavenBuildExtractor();
+            MavenBuildExtractor.IConfiguration configuration = createProxy(MavenBuildExtractor.IConfiguration.class,
+                "getURL", deliveryFolder.getAbsolutePath());
+            MavenBuildExtractor.ISourceRoot root = createProxy(MavenBuildExtractor.ISourceRoot.class,
+                "getContentDirectoryFile", contentFolder);
+            MavenBuildExtractor.IRootFactory rootFactory = createProxy(MavenBuildExtractor.IRootFactory.class, null,
+                null);
+            extractor.connect(deliveryFolder.getAbsolutePath(), null, null, configuration);
+            extractor.extract(Collections.singletonList(root), rootFactory, configuration);
+            extractor.disconnect(configuration);
+
+            String reason = extractor.budget.getExceededReason();
+            assertNotNull(reason);
+            assertTrue(reason.startsWith("uncompressed bytes"));
+            assertEquals(0, countFiles(contentFolder));
+        }
+        finally
+        {
+            System.clearProperty(PREFIX + "archive.maxMB");
+            System.clearProperty(PREFIX + "index.enabled");
+            delete(folder);
+        }
+    }
+
+    private static <T> T createProxy(Class<T> type, final String methodName, final Object value)
+    {
+        InvocationHandler handler = new InvocationHandler()
+        {
+            public Object invoke(Object proxy, Method method, Object[] args)
+            {
+                if (method.getName().equals(methodName))
+                    return value;
+                if (method.getName().equals("hashCode"))
+                    return Integer.valueOf(System.identityHashCode(proxy));
+                if (method.getName().equals("equals"))
+                    return Boolean.valueOf(proxy == args[0]);
+                Class<?> returnType = method.getReturnType();
+                if (returnType == boolean.class)
+                    return Boolean.FALSE;
+                if (returnType == int.class)
+                    return Integer.valueOf(0);
+                if (returnType == long.class)
+                    return Long.valueOf(0);
+                return null;
+            }
+        };
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, handler));
+    }
+
+    private static int countFiles(File folder)
+    {
+        int count = 0;
+        File[] files = folder.listFiles();
+        if (files != null)
+            for (File f : files)
+                count += f.isDirectory() ? countFiles(f) : 1;
+        return count;
+    }
+
+    private static void delete(File file)
+    {
+        File[] files = file.listFiles();
+        if (files != null)
+            for (File f : files)
+                delete(f);
+        file.delete();
+    }
+}
@@ -0,0 +1,127 @@
+package com.castsoftware.dmt.extractor.mavenbuild;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ArchivePrefetcherTest
+{
+    @Test
+    public void testStaging() throws IOException
+    {
+        File folder = createFolder();
+        try
+        {
+            List<File> archives = new ArrayList<File>();
+            for (int i = 0; i < 5; i++)
+                archives.add(createFile(new File(folder, "app-" + i + ".jar"), 1000 + i));
+            File stagingFolder = new File(folder, "staging");
+            // a file of another run sharing the staging folder
+            File otherFile = createFile(new File(stagingFolder, "0-app-0.jar"), 10);
+
+            ArchivePrefetcher prefetcher = new ArchivePrefetcher(archives, 2, stagingFolder, 1024 * 1024, null);
+            prefetcher.start();
+            for (int i = 0; i < archives.size(); i++)
+            {
+                InputStream inputStream = prefetcher.open(archives.get(i));
+                try
+                {
+                    assertArrayEquals(TarInputStreamTest.content(1000 + i), TarInputStreamTest.readAll(inputStream));
+                }
+                finally
+                {
+                    inputStream.close();
+                }
+            }
+            prefetcher.close();
+            assertEquals(5, prefetcher.getHits() + prefetcher.getLateHits() + prefetcher.getMisses());
+            assertEquals(1, stagingFolder.listFiles().length);
+            assertEquals(10, otherFile.length());
+        }
+        finally
+        {
+            delete(folder);
+        }
+    }
+
+    @Test
+    public void testCloseDuringRead() throws IOException
+    {
+        File folder = createFolder();
+        try
+        {
+            List<File> archives = new ArrayList<File>();
+            archives.add(createFile(new File(folder, "small.jar"), 10));
+            archives.add(createFile(new File(folder, "large.jar"), 8 * 1024 * 1024));
+            File stagingFolder = new File(folder, "staging");
+
+            // 8 seconds to read the large archive
+            ArchivePrefetcher prefetcher = new ArchivePrefetcher(archives, 2, stagingFolder, 64 * 1024 * 1024,
+                new IoThrottle(1024 * 1024));
+            prefetcher.start();
+            sleep(300);
+            long start = System.currentTimeMillis();
+            prefetcher.close();
+            assertTrue(System.currentTimeMillis() - start < 2000);
+            assertEquals(0, stagingFolder.listFiles().length);
+        }
+        finally
+        {
+            delete(folder);
+        }
+    }
+
+    private static File createFolder() throws IOException
+    {
+        File folder = File.createTempFile("prefetcher", "");
+        folder.delete();
+        folder.mkdirs();
+        return folder;
+    }
+
+    private static File createFile(File file, int size) throws IOException
+    {
+        file.getParentFile().mkdirs();
+        OutputStream outputStream = new FileOutputStream(file);
+        try
+        {
+            outputStream.write(TarInputStreamTest.content(size));
+        }
+        finally
+        {
+            outputStream.close();
+        }
+        return file;
+    }
+
+    private static void sleep(long millis)
+    {
+        try
+        {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void delete(File file)
+    {
+        File[] files = file.listFiles();
+        if (files != null)
+            for (File f : files)
+                delete(f);
+        file.delete();
+    }
+}
@@ -0,0 +1,100 @@
+package com.castsoftware.dmt.extractor.mavenbuild;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.Test;
+
+public class ArtifactCatalogueTest
+{
+    @Test
+    public void testPutAndGet()
+    {
+        ArtifactCatalogue artifacts = new ArtifactCatalogue();
+        int key = artifacts.put(ArtifactCatalogue.EAR, "com/acme", "app-1.0", new File("/drop/com/acme/app-1.0.ear"));
+        assertEquals(key, artifacts.put(ArtifactCatalogue.JAR, "com/acme", "app-1.0", new File("/drop/app-1.0.jar")));
+        assertEquals(key, artifacts.getKey("com/acme", "app-1.0"));
+        assertEquals(-1, artifacts.getKey("com/acme", "app-2.0"));
+        assertEquals(-1, artifacts.getKey("org/acme", "app-1.0"));
+        assertEquals(new File("/drop/com/acme/app-1.0.ear"), artifacts.getFile(key, ArtifactCatalogue.EAR));
+        assertEquals(new File("/drop/app-1.0.jar"), artifacts.getFile(key, ArtifactCatalogue.JAR));
+        assertFalse(artifacts.has(key, ArtifactCatalogue.WAR));
+        assertNull(artifacts.getFile(key, ArtifactCatalogue.WAR));
+        assertEquals("com/acme:app-1.0", artifacts.getKeyString(key));
+        assertEquals(2, artifacts.getNbArtifacts());
+    }
+
+    @Test
+    public void testReplace()
+    {
+        ArtifactCatalogue artifacts = new ArtifactCatalogue();
+        int key = artifacts.put(ArtifactCatalogue.JAR, "", "core-1.0", new File("/drop/a/core-1.0.jar"));
+        long estimatedBytes = artifacts.getEstimatedMemoryBytes();
+        // a shorter name overwrites the previous one, a longer one is added
+        artifacts.put(ArtifactCatalogue.JAR, "", "core-1.0", new File("/drop/b/c-1.0.jar"));
+        assertEquals(new File("/drop/b/c-1.0.jar"), artifacts.getFile(key, ArtifactCatalogue.JAR));
+        artifacts.put(ArtifactCatalogue.JAR, "", "core-1.0", new File("/drop/c/core-1.0-final.jar"));
+        assertEquals(new File("/drop/c/core-1.0-final.jar"), artifacts.getFile(key, ArtifactCatalogue.JAR));
+        assertEquals(1, artifacts.getNbArtifacts());
+
+        for (int i = 0; i < 10000; i++)
+            artifacts.put(ArtifactCatalogue.JAR, "", "core-1.0", new File("/drop/d/core-1.0.jar"));
+        assertEquals(1, artifacts.getNbArtifacts());
+        // only the three new folders are added, the records and names do not grow
+        assertEquals(estimatedBytes + 3 * (64 + "/drop/b".length() * 2), artifacts.getEstimatedMemoryBytes());
+    }
+
+    @Test
+    public void testReplaceDistributionEntry()
+    {
+        ArtifactCatalogue artifacts = new ArtifactCatalogue();
+        File assembly = new File("/drop/app-bin.zip");
+        AssemblyEntry entry = new AssemblyEntry(assembly, new String[] { "lib/core-1.0.jar" }, 0, 100);
+        int key = artifacts.put(ArtifactCatalogue.JAR, "", "core-1.0", entry);
+        assertTrue(artifacts.getFile(key, ArtifactCatalogue.JAR) instanceof AssemblyEntry);
+        long estimatedBytes = artifacts.getEstimatedMemoryBytes();
+
+        artifacts.put(ArtifactCatalogue.JAR, "", "core-1.0", new File("/drop/core-1.0.jar"));
+        assertEquals(new File("/drop/core-1.0.jar"), artifacts.getFile(key, ArtifactCatalogue.JAR));
+        assertFalse(artifacts.getFile(key, ArtifactCatalogue.JAR) instanceof AssemblyEntry);
+        // the distribution entry is no longer held
+        assertTrue(artifacts.getEstimatedMemoryBytes() < estimatedBytes + 64);
+        assertEquals(1, artifacts.getNbArtifacts());
+    }
+
+    @Test
+    public void testRemove()
+    {
+        ArtifactCatalogue artifacts = new ArtifactCatalogue();
+        int app = artifacts.put(ArtifactCatalogue.WAR, "", "app-1.0", new File("/drop/app-1.0.war"));
+        artifacts.put(ArtifactCatalogue.JAR, "", "app-1.0", new File("/drop/app-1.0.jar"));
+        artifacts.put(ArtifactCatalogue.POM, "", "app-1.0", new File("/drop/app-1.0.pom"));
+        int core = artifacts.put(ArtifactCatalogue.JAR, "", "core-1.0", new File("/drop/core-1.0.jar"));
+        assertEquals(4, artifacts.getNbArtifacts());
+        artifacts.remove(app, ArtifactCatalogue.POM);
+        assertEquals(3, artifacts.getNbArtifacts());
+        artifacts.removeKey(core);
+        assertEquals(2, artifacts.getNbArtifacts());
+        assertEquals(2, artifacts.getNbKeys());
+
+        // a removed archive gets a new record when it is put again
+        artifacts.put(ArtifactCatalogue.JAR, "", "core-1.0", new File("/drop/core-1.0.jar"));
+        assertEquals(3, artifacts.getNbArtifacts());
+    }
+
+    @Test
+    public void testManyKeys()
+    {
+        ArtifactCatalogue artifacts = new ArtifactCatalogue();
+        for (int i = 0; i < 5000; i++)
+            assertEquals(i, artifacts.put(ArtifactCatalogue.JAR, "g" + i % 7, "a" + i + "-1.0", new File("/drop/a" + i
+                + "-1.0.jar")));
+        for (int i = 0; i < 5000; i++)
+            assertEquals(i, artifacts.getKey("g" + i % 7, "a" + i + "-1.0"));
+        assertEquals(5000, artifacts.getNbArtifacts());
+    }
+}
@@ -0,0 +1,141 @@
+package com.castsoftware.dmt.extractor.mavenbuild;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class ClassIndexTest
+{
+    private static final String PACKAGE = "com/castsoftware/dmt/extractor/mavenbuild/";
+    private static final int ACC_INTERFACE = 0x0200;
+    private static final int ACC_ABSTRACT = 0x0400;
+
+    interface Shape extends Serializable
+    {
+        double area();
+    }
+
+    static class Square implements Shape, Comparable<Square>
+    {
+        private static final long serialVersionUID = 1L;
+
+        public double area()
+        {
+            return 1;
+        }
+
+        public int compareTo(Square o)
+        {
+            return 0;
+        }
+
+        class Corner
+        {
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException
+    {
+        ClassIndex classIndex = new ClassIndex();
+        for (Class<?> c : new Class<?>[] { ClassIndexTest.class, Shape.class, Square.class, Square.Corner.class })
+            assertTrue(classIndex.add(getClassContent(c)));
+        assertEquals(4, classIndex.size());
+
+        byte[] content = write(classIndex);
+        ClassIndex readIndex = ClassIndex.read(new ByteArrayInputStream(content));
+        assertEquals(4, readIndex.size());
+        assertArrayEquals(content, write(readIndex));
+
+        ClassIndex.ClassInfo shape = readIndex.get(PACKAGE + "ClassIndexTest$Shape");
+        assertNotNull(shape);
+        assertEquals("ClassIndexTest$Shape", shape.simpleName);
+        assertEquals(ACC_INTERFACE | ACC_ABSTRACT, shape.access & (ACC_INTERFACE | ACC_ABSTRACT));
+        assertEquals("java/lang/Object", shape.superName);
+        assertEquals(Arrays.asList("java/io/Serializable"), Arrays.asList(shape.interfaces));
+
+        ClassIndex.ClassInfo square = readIndex.get(PACKAGE + "ClassIndexTest$Square");
+        assertEquals(0, square.access & ACC_INTERFACE);
+        assertEquals(Arrays.asList(PACKAGE + "ClassIndexTest$Shape", "java/lang/Comparable"),
+            Arrays.asList(square.interfaces));
+
+        ClassIndex.ClassInfo corner = readIndex.get(PACKAGE + "ClassIndexTest$Square$Corner");
+        assertEquals("java/lang/Object", corner.superName);
+        assertEquals(0, corner.interfaces.length);
+
+        assertNull(readIndex.get(PACKAGE + "ClassIndexTest$Circle"));
+        assertNull(readIndex.get("ClassIndexTest"));
+    }
+
+    @Test
+    public void testFormat() throws IOException
+    {
+        ClassIndex classIndex = new ClassIndex();
+        classIndex.add(getClassContent(Shape.class));
+        byte[] content = write(classIndex);
+        assertEquals("MBCI", new String(content, 0, 4, "US-ASCII"));
+        assertEquals(0, content[4]);
+        assertEquals(1, content[5]);
+    }
+
+    @Test
+    public void testEmpty() throws IOException
+    {
+        ClassIndex readIndex = ClassIndex.read(new ByteArrayInputStream(write(new ClassIndex())));
+        assertEquals(0, readIndex.size());
+    }
+
+    @Test
+    public void testTruncatedClass() throws IOException
+    {
+        byte[] content = TarInputStreamTest.readAll(getClassContent(Square.class));
+        ClassIndex classIndex = new ClassIndex();
+        for (int length : new int[] { 0, 3, 10, content.length / 2 })
+            assertFalse(classIndex.add(new ByteArrayInputStream(Arrays.copyOf(content, length))));
+        assertFalse(classIndex.add(new ByteArrayInputStream(TarInputStreamTest.content(100))));
+        assertEquals(0, classIndex.size());
+        assertTrue(classIndex.add(new ByteArrayInputStream(content)));
+        assertEquals(1, classIndex.size());
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedIndex() throws IOException
+    {
+        ClassIndex classIndex = new ClassIndex();
+        classIndex.add(getClassContent(Square.class));
+        byte[] content = write(classIndex);
+        ClassIndex.read(new ByteArrayInputStream(Arrays.copyOf(content, content.length - 3)));
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnknownVersion() throws IOException
+    {
+        byte[] content = write(new ClassIndex());
+        content[5] = 2;
+        ClassIndex.read(new ByteArrayInputStream(content));
+    }
+
+    private static InputStream getClassContent(Class<?> c)
+    {
+        return c.getResourceAsStream(c.getName().substring(c.getName().lastIndexOf('.') + 1) + ".class");
+    }
+
+    private static byte[] write(ClassIndex classIndex) throws IOException
+    {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        classIndex.write(content);
+        return content.toByteArray();
+    }
+}
@@ -0,0 +1,112 @@
+package com.castsoftware.dmt.extractor.mavenbuild;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ModuleGraphTest
+{
+    @Test
+    public void testCoordinates() throws IOException
+    {
+        File folder = File.createTempFile("graph", "");
+        folder.delete();
+        folder.mkdirs();
+        try
+        {
+            // the versions of the properties, scm and distribution are not the one of the module
+            File corePom = write(new File(folder, "core.pom"), "<?xml version=\"1.0\"?>\n"
+                + "<!-- <version>0.1</version> -->\n"
+                + "<project xmlns=\"http://maven.apache.org/POM/4.0.0\">\n"
+                + "  <modelVersion>4.0.0</modelVersion>\n"
+                + "  <parent><groupId>com.acme</groupId><artifactId>parent</artifactId><version>3.0</version></parent>\n"
+                + "  <properties><version>9.9</version><artifactId>other</artifactId></properties>\n"
+                + "  <scm><connection>scm:git:x</connection><tag>v1</tag><version>8.8</version></scm>\n"
+                + "  <distributionManagement><relocation><version>7.7</version></relocation></distributionManagement>\n"
+                + "  <artifactId>core</artifactId>\n"
+                + "  <description><![CDATA[<version>6.6</version>]]></description>\n"
+                + "  <dependencies><dependency><artifactId>lib</artifactId><version>5.5</version></dependency>"
+                + "</dependencies>\n"
+                + "  <version>1.0</version>\n"
+                + "  <packaging>jar</packaging>\n"
+                + "  <empty/>\n"
+                + "</project>\n");
+            // the version inherited from the parent
+            File webPom = write(new File(folder, "web.pom"), "<project>\n"
+                + "  <properties><version>9.9</version></properties>\n"
+                + "  <parent>\n"
+                + "    <groupId>com.acme</groupId><artifactId>parent</artifactId>\n"
+                + "    <relativePath>../<!-- <version>4.4</version> -->parent</relativePath><version>2.0</version>\n"
+                + "  </parent>\n"
+                + "  <artifactId>web</artifactId>\n"
+                + "</project>\n");
+
+            ModuleGraph graph = new ModuleGraph();
+            ModuleGraph.Module core = graph.getModule(new File(folder, "core"), "core");
+            core.addArchive("jar", "core-1.0.jar", null);
+            core.readCoordinates(corePom);
+            ModuleGraph.Module web = graph.getModule(new File(folder, "web"), "web");
+            web.addArchive("war", "web-2.0.war", null);
+            web.addLibraries("web-2.0.war", Arrays.asList("WEB-INF/lib/core-1.0.jar", "WEB-INF/lib/lib-5.5.jar"));
+            web.readCoordinates(webPom);
+            ModuleGraph.Module other = graph.getModule(new File(folder, "other"), "other");
+            other.addArchive("war", "other-1.0.war", null);
+            other.addLibraries("other-1.0.war", Arrays.asList("WEB-INF/lib/web-2.0.jar", "WEB-INF/lib/core-9.9.jar"));
+
+            List<String[]> dependencies = graph.getDependencies();
+            assertEquals(2, dependencies.size());
+            assertEquals(Arrays.asList("other", "web", "WEB-INF/lib/web-2.0.jar"), Arrays.asList(dependencies.get(0)));
+            assertEquals(Arrays.asList("web", "core", "WEB-INF/lib/core-1.0.jar"), Arrays.asList(dependencies.get(1)));
+
+            File graphFile = new File(folder, "graph.json");
+            graph.write(graphFile);
+            String content = read(graphFile);
+            assertTrue(content.contains("\"groupId\": \"com.acme\",\n      \"artifactId\": \"core\",\n"
+                + "      \"version\": \"1.0\",\n      \"packaging\": \"jar\""));
+            assertTrue(content.contains("\"artifactId\": \"web\",\n      \"version\": \"2.0\""));
+        }
+        finally
+        {
+            for (File f : folder.listFiles())
+                f.delete();
+            folder.delete();
+        }
+    }
+
+    private static File write(File file, String content) throws IOException
+    {
+        OutputStream outputStream = new FileOutputStream(file);
+        try
+        {
+            outputStream.write(content.getBytes("UTF-8"));
+        }
+        finally
+        {
+            outputStream.close();
+        }
+        return file;
+    }
+
+    private static String read(File file) throws IOException
+    {
+        InputStream inputStream = new FileInputStream(file);
+        try
+        {
+            return new String(TarInputStreamTest.readAll(inputStream), "UTF-8");
+        }
+        finally
+        {
+            inputStream.close();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.castsoftware.dmt.extractor.mavenbuild;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class ModuleStatisticsTest
+{
+    @Test
+    public void testWrite() throws IOException
+    {
+        ModuleStatistics core = new ModuleStatistics("core", "/content/core");
+        core.addFile("/content/core/src/main/java/A.java", 100, 5);
+        core.addFile("/content/core/src/main/java/B.java", 50, 2);
+        core.addFile("/content/core/lib/x.bin", 1000, -1);
+
+        // the only archive of the module has been skipped by the budget
+        ModuleStatistics phantom = new ModuleStatistics("phantom", "/content/phantom");
+        phantom.checkpoint();
+        phantom.addFile("/content/phantom/src/main/java/C.java", 10, 1);
+        phantom.rollback();
+
+        File summaryFile = File.createTempFile("module-statistics", ".json");
+        try
+        {
+            assertEquals(1, ModuleStatistics.write(Arrays.asList(phantom, core), summaryFile));
+            InputStream inputStream = new FileInputStream(summaryFile);
+            String summary;
+            try
+            {
+                summary = new String(TarInputStreamTest.readAll(inputStream), "UTF-8");
+            }
+            finally
+            {
+                inputStream.close();
+            }
+            assertTrue(summary.contains("\"module\": \"core\""));
+            assertTrue(summary.contains("\"files\": 3,"));
+            assertTrue(summary.contains("\"lines\": 7,"));
+            assertTrue(summary.contains("\"java\": { \"files\": 2, \"bytes\": 150, \"lines\": 7 }"));
+            assertFalse(summary.contains("phantom"));
+        }
+        finally
+        {
+            summaryFile.delete();
+        }
+    }
+}
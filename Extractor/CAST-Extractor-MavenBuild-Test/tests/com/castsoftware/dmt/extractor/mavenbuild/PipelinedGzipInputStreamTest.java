@@ -0,0 +1,274 @@
+package com.castsoftware.dmt.extractor.mavenbuild;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+public class PipelinedGzipInputStreamTest
+{
+    @Test
+    public void testRoundTrip() throws IOException
+    {
+        // several chunks, the last one partial
+        byte[] content = TarInputStreamTest.content(3 * 256 * 1024 + 1000);
+        InputStream inputStream = new PipelinedGzipInputStream(new ByteArrayInputStream(gzip(content)));
+        try
+        {
+            assertArrayEquals(content, TarInputStreamTest.readAll(inputStream));
+            assertEquals(-1, inputStream.read());
+        }
+        finally
+        {
+            inputStream.close();
+        }
+    }
+
+    @Test
+    public void testEmpty() throws IOException
+    {
+        InputStream inputStream = new PipelinedGzipInputStream(new ByteArrayInputStream(gzip(new byte[0])));
+        try
+        {
+            assertEquals(-1, inputStream.read());
+        }
+        finally
+        {
+            inputStream.close();
+        }
+    }
+
+    @Test
+    public void testMultipleMembers() throws IOException
+    {
+        // a tar.gz appended to by several gzip invocations
+        byte[] first = TarInputStreamTest.content(1000);
+        byte[] second = TarInputStreamTest.content(300 * 1024);
+        ByteArrayOutputStream members = new ByteArrayOutputStream();
+        members.write(gzip(first));
+        members.write(gzip(second));
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        content.write(first);
+        content.write(second);
+
+        InputStream inputStream = new PipelinedGzipInputStream(new ByteArrayInputStream(members.toByteArray()));
+        try
+        {
+            assertArrayEquals(content.toByteArray(), TarInputStreamTest.readAll(inputStream));
+        }
+        finally
+        {
+            inputStream.close();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncated() throws IOException
+    {
+        byte[] compressed = gzip(TarInputStreamTest.content(100 * 1024));
+        byte[] truncated = Arrays.copyOf(compressed, compressed.length / 2);
+        InputStream inputStream = new PipelinedGzipInputStream(new ByteArrayInputStream(truncated));
+        try
+        {
+            TarInputStreamTest.readAll(inputStream);
+        }
+        finally
+        {
+            inputStream.close();
+        }
+    }
+
+    @Test
+    public void testTruncatedSecondMember() throws IOException
+    {
+        // the content of the complete first member is delivered before the truncation is reported
+        byte[] first = TarInputStreamTest.content(1000);
+        byte[] second = gzip(TarInputStreamTest.content(300 * 1024));
+        ByteArrayOutputStream members = new ByteArrayOutputStream();
+        members.write(gzip(first));
+        members.write(second, 0, second.length / 2);
+
+        InputStream inputStream = new PipelinedGzipInputStream(new ByteArrayInputStream(members.toByteArray()));
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        try
+        {
+            byte[] buf = new byte[100];
+            int n;
+            while ((n = inputStream.read(buf)) >= 0)
+                content.write(buf, 0, n);
+            fail();
+        }
+        catch (EOFException e)
+        {
+            assertArrayEquals(first, Arrays.copyOf(content.toByteArray(), first.length));
+        }
+        finally
+        {
+            inputStream.close();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotGzip() throws IOException
+    {
+        InputStream inputStream = new PipelinedGzipInputStream(new ByteArrayInputStream(TarInputStreamTest.content(
+            1000)));
+        try
+        {
+            inputStream.read();
+        }
+        finally
+        {
+            inputStream.close();
+        }
+    }
+
+    @Test
+    public void testSourceFailure() throws IOException
+    {
+        // a source failing part-way with an unchecked exception ends the stream with an IOException instead of a hang
+        final IllegalStateException failure = new IllegalStateException("source failure");
+        byte[] content = new byte[1024 * 1024];
+        new Random(1).nextBytes(content);
+        InputStream compressed = new ByteArrayInputStream(gzip(content))
+        {
+            @Override
+            public synchronized int read(byte[] b, int off, int len)
+            {
+                if (pos > 100 * 1024)
+                    throw failure;
+                return super.read(b, off, Math.min(len, 1024));
+            }
+        };
+        InputStream inputStream = new PipelinedGzipInputStream(compressed);
+        try
+        {
+            TarInputStreamTest.readAll(inputStream);
+            fail();
+        }
+        catch (IOException e)
+        {
+            assertSame(failure, e.getCause());
+        }
+        finally
+        {
+            inputStream.close();
+        }
+    }
+
+    @Test
+    public void testTarEntries() throws IOException
+    {
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        TarInputStreamTest.writeEntry(tar, "lib/core-1.0.jar", '0', TarInputStreamTest.content(400 * 1024));
+        TarInputStreamTest.writeEntry(tar, "pom.xml", '0', TarInputStreamTest.content(100));
+        TarInputStreamTest.writeEnd(tar);
+
+        TarInputStream tarInputStream = new TarInputStream(new PipelinedGzipInputStream(new ByteArrayInputStream(
+            gzip(tar.toByteArray()))));
+        try
+        {
+            assertEquals("lib/core-1.0.jar", tarInputStream.getNextEntry().name);
+            assertEquals("pom.xml", tarInputStream.getNextEntry().name);
+            assertArrayEquals(TarInputStreamTest.content(100), TarInputStreamTest.readAll(tarInputStream));
+        }
+        finally
+        {
+            tarInputStream.close();
+        }
+    }
+
+    @Test
+    public void testTarInMultipleMembers() throws IOException
+    {
+        // the members split the tar inside a header and inside an entry
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        TarInputStreamTest.writeEntry(tar, "lib/core-1.0.jar", '0', TarInputStreamTest.content(300 * 1024));
+        TarInputStreamTest.writeEntry(tar, "pom.xml", '0', TarInputStreamTest.content(100));
+        TarInputStreamTest.writeEnd(tar);
+        byte[] bytes = tar.toByteArray();
+        int header = 512 + 300 * 1024 + 200;
+        ByteArrayOutputStream members = new ByteArrayOutputStream();
+        members.write(gzip(Arrays.copyOfRange(bytes, 0, 100 * 1024)));
+        members.write(gzip(Arrays.copyOfRange(bytes, 100 * 1024, header)));
+        members.write(gzip(Arrays.copyOfRange(bytes, header, bytes.length)));
+
+        TarInputStream tarInputStream = new TarInputStream(new PipelinedGzipInputStream(new ByteArrayInputStream(
+            members.toByteArray())));
+        try
+        {
+            assertEquals("lib/core-1.0.jar", tarInputStream.getNextEntry().name);
+            assertArrayEquals(TarInputStreamTest.content(300 * 1024), TarInputStreamTest.readAll(tarInputStream));
+            assertEquals("pom.xml", tarInputStream.getNextEntry().name);
+            assertArrayEquals(TarInputStreamTest.content(100), TarInputStreamTest.readAll(tarInputStream));
+            assertNull(tarInputStream.getNextEntry());
+        }
+        finally
+        {
+            tarInputStream.close();
+        }
+    }
+
+    @Test(expected = EOFException.class)
+    public void testTruncatedTarHeader() throws IOException
+    {
+        // a complete gzip stream of a tar cut inside the header of its second entry
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        TarInputStreamTest.writeEntry(tar, "lib/core-1.0.jar", '0', TarInputStreamTest.content(300 * 1024));
+        TarInputStreamTest.writeEntry(tar, "pom.xml", '0', TarInputStreamTest.content(100));
+        byte[] truncated = Arrays.copyOf(tar.toByteArray(), 512 + 300 * 1024 + 200);
+
+        TarInputStream tarInputStream = new TarInputStream(new PipelinedGzipInputStream(new ByteArrayInputStream(
+            gzip(truncated))));
+        try
+        {
+            assertEquals("lib/core-1.0.jar", tarInputStream.getNextEntry().name);
+            tarInputStream.getNextEntry();
+        }
+        finally
+        {
+            tarInputStream.close();
+        }
+    }
+
+    @Test
+    public void testCloseBeforeEnd() throws IOException
+    {
+        // the decoder, blocked on the full queue, stops when the stream is closed
+        final boolean[] closed = new boolean[1];
+        InputStream compressed = new ByteArrayInputStream(gzip(new byte[16 * 1024 * 1024]))
+        {
+            @Override
+            public void close() throws IOException
+            {
+                closed[0] = true;
+                super.close();
+            }
+        };
+        InputStream inputStream = new PipelinedGzipInputStream(compressed);
+        assertEquals(0, inputStream.read());
+        inputStream.close();
+        assertEquals(Boolean.TRUE, Boolean.valueOf(closed[0]));
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException
+    {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        GZIPOutputStream outputStream = new GZIPOutputStream(compressed);
+        outputStream.write(content);
+        outputStream.close();
+        return compressed.toByteArray();
+    }
+}
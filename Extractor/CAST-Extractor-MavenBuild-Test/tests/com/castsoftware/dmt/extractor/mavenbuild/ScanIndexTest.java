@@ -0,0 +1,147 @@
+package com.castsoftware.dmt.extractor.mavenbuild;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.junit.Test;
+
+public class ScanIndexTest
+{
+    @Test
+    public void testDisabledByDefault()
+    {
+        assertFalse(MavenBuildSettings.load(null).indexEnabled);
+    }
+
+    @Test
+    public void testArchiveOverwrittenInPlace() throws IOException
+    {
+        File folder = File.createTempFile("scan", "");
+        folder.delete();
+        File rootFolder = new File(folder, "drop");
+        File indexFolder = new File(folder, "index");
+        try
+        {
+            File libFolder = new File(rootFolder, "lib");
+            libFolder.mkdirs();
+            File jar = write(new File(libFolder, "core-1.0.jar"), 100);
+            write(new File(libFolder, "notes.txt"), 10);
+
+            ScanIndex index = ScanIndex.get(rootFolder, indexFolder);
+            index.refresh(null);
+            assertEquals(2, index.getNbListedFolders());
+            assertEquals(100, getEntry(index, "core-1.0.jar").length);
+            assertTrue(new File(indexFolder, "scan-" + ScanIndex.getDeliveryId(rootFolder) + ".idx").isFile());
+
+            index.refresh(null);
+            assertEquals(0, index.getNbListedFolders());
+            assertNotNull(index.getFolder(libFolder));
+
+            // the same name overwritten, the folder keeping its modification time
+            long folderLastModified = libFolder.lastModified();
+            write(jar, 200);
+            jar.setLastModified(jar.lastModified() + 2000);
+            libFolder.setLastModified(folderLastModified);
+            assertNull(index.getFolder(libFolder));
+            index.refresh(null);
+            assertEquals(1, index.getNbListedFolders());
+            assertEquals(200, getEntry(index, "core-1.0.jar").length);
+        }
+        finally
+        {
+            delete(folder);
+        }
+    }
+
+    @Test
+    public void testSelectedVersionMissing() throws IOException
+    {
+        File folder = File.createTempFile("scan", "");
+        folder.delete();
+        File rootFolder = new File(folder, "drop");
+        try
+        {
+            File artifactFolder = new File(rootFolder, "com/acme/core");
+            for (String version : new String[] { "1.0", "1.10", "1.9", "2.0-SNAPSHOT" })
+            {
+                new File(artifactFolder, version).mkdirs();
+                write(new File(artifactFolder, version + "/core-" + version + ".jar"), 10);
+            }
+            File metadataFile = new File(artifactFolder, RepositoryLayout.METADATA_FILENAME);
+            OutputStream outputStream = new FileOutputStream(metadataFile);
+            try
+            {
+                outputStream.write(("<metadata><versioning><latest>2.1-SNAPSHOT</latest><release>2.0</release>"
+                    + "</versioning></metadata>").getBytes("UTF-8"));
+            }
+            finally
+            {
+                outputStream.close();
+            }
+
+            ScanIndex index = ScanIndex.get(rootFolder, new File(folder, "index"));
+            index.refresh(RepositoryLayout.RELEASE);
+            assertNotNull(getEntry(index, "core-1.10.jar"));
+            assertNull(getEntry(index, "core-1.9.jar"));
+            assertNull(getEntry(index, "core-2.0-SNAPSHOT.jar"));
+
+            index.refresh(RepositoryLayout.LATEST);
+            assertNotNull(getEntry(index, "core-2.0-SNAPSHOT.jar"));
+            assertNull(getEntry(index, "core-1.10.jar"));
+        }
+        finally
+        {
+            delete(folder);
+        }
+    }
+
+    @Test
+    public void testCompareVersions()
+    {
+        assertTrue(RepositoryLayout.compareVersions("1.10", "1.9") > 0);
+        assertTrue(RepositoryLayout.compareVersions("1.0.1", "1.0") > 0);
+        assertTrue(RepositoryLayout.compareVersions("1.0-SNAPSHOT", "1.0") < 0);
+        assertTrue(RepositoryLayout.compareVersions("1.0-beta", "1.0-alpha") > 0);
+        assertEquals(0, RepositoryLayout.compareVersions("1.0", "1.0"));
+    }
+
+    private static ScanIndex.FileEntry getEntry(ScanIndex index, String name)
+    {
+        for (ScanIndex.Folder folder : index.getFolders())
+            for (ScanIndex.FileEntry file : folder.files)
+                if (file.name.equals(name))
+                    return file;
+        return null;
+    }
+
+    private static File write(File file, int size) throws IOException
+    {
+        OutputStream outputStream = new FileOutputStream(file);
+        try
+        {
+            outputStream.write(TarInputStreamTest.content(size));
+        }
+        finally
+        {
+            outputStream.close();
+        }
+        return file;
+    }
+
+    private static void delete(File file)
+    {
+        File[] files = file.listFiles();
+        if (files != null)
+            for (File f : files)
+                delete(f);
+        file.delete();
+    }
+}
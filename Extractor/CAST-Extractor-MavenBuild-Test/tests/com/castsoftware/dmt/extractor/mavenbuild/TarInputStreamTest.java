@@ -0,0 +1,287 @@
+package com.castsoftware.dmt.extractor.mavenbuild;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class TarInputStreamTest
+{
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Test
+    public void testEntries() throws IOException
+    {
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        writeEntry(tar, "app/", '5', new byte[0]);
+        writeEntry(tar, "app/lib/core-1.0.jar", '0', content(1000));
+        writeEntry(tar, "app/pom.xml", '0', content(512));
+        writeEnd(tar);
+
+        TarInputStream tarInputStream = new TarInputStream(new ByteArrayInputStream(tar.toByteArray()));
+        TarInputStream.Entry entry = tarInputStream.getNextEntry();
+        assertEquals("app/", entry.name);
+        assertFalse(entry.isFile);
+        entry = tarInputStream.getNextEntry();
+        assertEquals("app/lib/core-1.0.jar", entry.name);
+        assertEquals(1000, entry.size);
+        assertTrue(entry.isFile);
+        assertArrayEquals(content(1000), readAll(tarInputStream));
+        // the pom is read without reading the end of the jar
+        entry = tarInputStream.getNextEntry();
+        assertEquals("app/pom.xml", entry.name);
+        assertArrayEquals(content(512), readAll(tarInputStream));
+        assertNull(tarInputStream.getNextEntry());
+    }
+
+    @Test
+    public void testSkippedContent() throws IOException
+    {
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        writeEntry(tar, "a.jar", '0', content(700));
+        writeEntry(tar, "b.jar", '0', content(3));
+        writeEnd(tar);
+
+        TarInputStream tarInputStream = new TarInputStream(new ByteArrayInputStream(tar.toByteArray()));
+        tarInputStream.getNextEntry();
+        assertEquals(content(700)[0], (byte) tarInputStream.read());
+        assertEquals("b.jar", tarInputStream.getNextEntry().name);
+        assertArrayEquals(content(3), readAll(tarInputStream));
+    }
+
+    @Test
+    public void testUstarPrefix() throws IOException
+    {
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        byte[] header = createHeader("core-1.0.jar", '0', 4);
+        putString(header, 345, "distribution/lib");
+        writeHeader(tar, header);
+        writeContent(tar, content(4));
+        writeEnd(tar);
+
+        TarInputStream tarInputStream = new TarInputStream(new ByteArrayInputStream(tar.toByteArray()));
+        assertEquals("distribution/lib/core-1.0.jar", tarInputStream.getNextEntry().name);
+    }
+
+    @Test
+    public void testGnuLongName() throws IOException
+    {
+        String longName = repeat("very-long-folder-name/", 10) + "core-1.0.jar";
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        byte[] name = (longName + "\0").getBytes(UTF8);
+        writeEntry(tar, "././@LongLink", 'L', name);
+        writeEntry(tar, longName.substring(0, 99), '0', content(10));
+        writeEntry(tar, "short.jar", '0', content(20));
+        writeEnd(tar);
+
+        TarInputStream tarInputStream = new TarInputStream(new ByteArrayInputStream(tar.toByteArray()));
+        TarInputStream.Entry entry = tarInputStream.getNextEntry();
+        assertEquals(longName, entry.name);
+        assertEquals(10, entry.size);
+        assertArrayEquals(content(10), readAll(tarInputStream));
+        // the long name only applies to the next entry
+        assertEquals("short.jar", tarInputStream.getNextEntry().name);
+    }
+
+    @Test
+    public void testPaxPath() throws IOException
+    {
+        String longName = repeat("pax-folder/", 12) + "web-1.0.war";
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        writeEntry(tar, "PaxHeaders/global", 'g', paxRecords("comment=global header"));
+        writeEntry(tar, "PaxHeaders/web-1.0.war", 'x', paxRecords("mtime=1700000000.5", "path=" + longName));
+        writeEntry(tar, "web-1.0.war", '0', content(600));
+        writeEntry(tar, "PaxHeaders/pom.xml", 'x', paxRecords("mtime=1700000000.5"));
+        writeEntry(tar, "pom.xml", '0', content(5));
+        writeEnd(tar);
+
+        TarInputStream tarInputStream = new TarInputStream(new ByteArrayInputStream(tar.toByteArray()));
+        TarInputStream.Entry entry = tarInputStream.getNextEntry();
+        assertEquals(longName, entry.name);
+        assertArrayEquals(content(600), readAll(tarInputStream));
+        // a pax header without path keeps the name of the header block
+        assertEquals("pom.xml", tarInputStream.getNextEntry().name);
+        assertNull(tarInputStream.getNextEntry());
+    }
+
+    @Test
+    public void testEndWithoutZeroBlocks() throws IOException
+    {
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        writeEntry(tar, "a.jar", '0', content(10));
+
+        TarInputStream tarInputStream = new TarInputStream(new ByteArrayInputStream(tar.toByteArray()));
+        assertEquals("a.jar", tarInputStream.getNextEntry().name);
+        assertNull(tarInputStream.getNextEntry());
+    }
+
+    @Test(expected = EOFException.class)
+    public void testTruncatedContent() throws IOException
+    {
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        writeEntry(tar, "a.jar", '0', content(1000));
+        byte[] truncated = Arrays.copyOf(tar.toByteArray(), 512 + 600);
+
+        TarInputStream tarInputStream = new TarInputStream(new ByteArrayInputStream(truncated));
+        tarInputStream.getNextEntry();
+        readAll(tarInputStream);
+    }
+
+    @Test(expected = EOFException.class)
+    public void testTruncatedSkippedContent() throws IOException
+    {
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        writeEntry(tar, "a.jar", '0', content(1000));
+        byte[] truncated = Arrays.copyOf(tar.toByteArray(), 512 + 600);
+
+        TarInputStream tarInputStream = new TarInputStream(new ByteArrayInputStream(truncated));
+        tarInputStream.getNextEntry();
+        tarInputStream.getNextEntry();
+    }
+
+    @Test(expected = EOFException.class)
+    public void testTruncatedHeader() throws IOException
+    {
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        writeEntry(tar, "a.jar", '0', content(10));
+        writeEntry(tar, "b.jar", '0', content(10));
+        byte[] truncated = Arrays.copyOf(tar.toByteArray(), 1024 + 100);
+
+        TarInputStream tarInputStream = new TarInputStream(new ByteArrayInputStream(truncated));
+        tarInputStream.getNextEntry();
+        tarInputStream.getNextEntry();
+    }
+
+    @Test(expected = EOFException.class)
+    public void testTruncatedFirstHeader() throws IOException
+    {
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        writeEntry(tar, "a.jar", '0', content(10));
+        byte[] truncated = Arrays.copyOf(tar.toByteArray(), 300);
+
+        new TarInputStream(new ByteArrayInputStream(truncated)).getNextEntry();
+    }
+
+    @Test
+    public void testTruncatedHeaderAfterEntries() throws IOException
+    {
+        // the entries before the truncated header are read completely
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        writeEntry(tar, "a.jar", '0', content(10));
+        writeEntry(tar, "b.jar", '0', content(700));
+        writeEntry(tar, "c.jar", '0', content(10));
+        byte[] truncated = Arrays.copyOf(tar.toByteArray(), 512 + 512 + 512 + 1024 + 511);
+
+        TarInputStream tarInputStream = new TarInputStream(new ByteArrayInputStream(truncated));
+        assertEquals("a.jar", tarInputStream.getNextEntry().name);
+        assertEquals("b.jar", tarInputStream.getNextEntry().name);
+        assertArrayEquals(content(700), readAll(tarInputStream));
+        try
+        {
+            tarInputStream.getNextEntry();
+            fail();
+        }
+        catch (EOFException e)
+        {
+            // expected
+        }
+    }
+
+    static byte[] content(int size)
+    {
+        byte[] content = new byte[size];
+        for (int i = 0; i < size; i++)
+            content[i] = (byte) (i * 31 + size);
+        return content;
+    }
+
+    static byte[] readAll(InputStream inputStream) throws IOException
+    {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        byte[] buf = new byte[100];
+        int n;
+        while ((n = inputStream.read(buf)) >= 0)
+            content.write(buf, 0, n);
+        return content.toByteArray();
+    }
+
+    static void writeEntry(ByteArrayOutputStream tar, String name, char type, byte[] content) throws IOException
+    {
+        writeHeader(tar, createHeader(name, type, content.length));
+        writeContent(tar, content);
+    }
+
+    static void writeEnd(ByteArrayOutputStream tar) throws IOException
+    {
+        tar.write(new byte[1024]);
+    }
+
+    private static byte[] createHeader(String name, char type, long size)
+    {
+        byte[] header = new byte[512];
+        putString(header, 0, name);
+        putString(header, 100, "0000644");
+        putString(header, 124, String.format("%011o", size));
+        putString(header, 136, "00000000000");
+        header[156] = (byte) type;
+        putString(header, 257, "ustar");
+        putString(header, 263, "00");
+        return header;
+    }
+
+    private static void writeHeader(ByteArrayOutputStream tar, byte[] header) throws IOException
+    {
+        Arrays.fill(header, 148, 156, (byte) ' ');
+        int checksum = 0;
+        for (byte b : header)
+            checksum += b & 0xFF;
+        putString(header, 148, String.format("%06o", checksum));
+        tar.write(header);
+    }
+
+    private static void writeContent(ByteArrayOutputStream tar, byte[] content) throws IOException
+    {
+        tar.write(content);
+        tar.write(new byte[(512 - content.length % 512) % 512]);
+    }
+
+    private static void putString(byte[] header, int offset, String value)
+    {
+        byte[] bytes = value.getBytes(UTF8);
+        System.arraycopy(bytes, 0, header, offset, bytes.length);
+    }
+
+    private static byte[] paxRecords(String... records)
+    {
+        StringBuilder content = new StringBuilder();
+        for (String record : records)
+        {
+            // the length of a record counts its own digits
+            int length = record.length() + 3;
+            while (String.valueOf(length).length() + record.length() + 2 != length)
+                length++;
+            content.append(length).append(' ').append(record).append('\n');
+        }
+        return content.toString().getBytes(UTF8);
+    }
+
+    private static String repeat(String s, int count)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++)
+            sb.append(s);
+        return sb.toString();
+    }
+}
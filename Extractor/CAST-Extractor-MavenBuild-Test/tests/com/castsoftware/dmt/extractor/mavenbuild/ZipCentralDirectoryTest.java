@@ -0,0 +1,130 @@
+package com.castsoftware.dmt.extractor.mavenbuild;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Test;
+
+public class ZipCentralDirectoryTest
+{
+    /**
+     * Counts the bytes read, to check that the central directory is not read.
+     */
+    private static final class CountingInputStream extends ByteArrayInputStream
+    {
+        CountingInputStream(byte[] buf)
+        {
+            super(buf);
+        }
+
+        int getPosition()
+        {
+            return pos;
+        }
+    }
+
+    @Test
+    public void testDeflatedEntries() throws IOException
+    {
+        // ZipOutputStream writes deflated entries with data descriptors
+        byte[] zip = createZip(false, "app/", "app/lib/core-1.0.jar", "app/lib/web-1.0.war", "app/pom.xml");
+        assertEquals(Arrays.asList("app/", "app/lib/core-1.0.jar", "app/lib/web-1.0.war", "app/pom.xml"),
+            ZipCentralDirectory.readEntryNames(new ByteArrayInputStream(zip)));
+    }
+
+    @Test
+    public void testStoredEntries() throws IOException
+    {
+        byte[] zip = createZip(true, "lib/core-1.0.jar", "lib/util-1.0.jar");
+        assertEquals(Arrays.asList("lib/core-1.0.jar", "lib/util-1.0.jar"),
+            ZipCentralDirectory.readEntryNames(new ByteArrayInputStream(zip)));
+    }
+
+    @Test
+    public void testStopsAtCentralDirectory() throws IOException
+    {
+        // a central directory larger than the inflate buffer, which is all the reader may read ahead
+        String[] names = new String[500];
+        for (int i = 0; i < names.length; i++)
+            names[i] = "lib/artifact-" + i + "-1.0.jar";
+        byte[] zip = createZip(false, names);
+        CountingInputStream inputStream = new CountingInputStream(zip);
+        assertEquals(Arrays.asList(names), ZipCentralDirectory.readEntryNames(inputStream));
+        int centralDirectory = indexOf(zip, new byte[] { 'P', 'K', 1, 2 });
+        assertTrue(zip.length - centralDirectory > 2 * 8192);
+        assertTrue(inputStream.getPosition() <= centralDirectory + 8192);
+    }
+
+    @Test
+    public void testEmpty() throws IOException
+    {
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        new ZipOutputStream(zip).close();
+        assertEquals(0, ZipCentralDirectory.readEntryNames(new ByteArrayInputStream(zip.toByteArray())).size());
+    }
+
+    @Test
+    public void testTruncated() throws IOException
+    {
+        byte[] zip = createZip(false, "a.jar", "b.jar");
+        int centralDirectory = indexOf(zip, new byte[] { 'P', 'K', 1, 2 });
+        for (int length : new int[] { 10, 40, centralDirectory / 2, centralDirectory - 1 })
+            assertNull(ZipCentralDirectory.readEntryNames(new ByteArrayInputStream(Arrays.copyOf(zip, length))));
+    }
+
+    @Test
+    public void testNotZip() throws IOException
+    {
+        assertNull(ZipCentralDirectory.readEntryNames(new ByteArrayInputStream(TarInputStreamTest.content(1000))));
+        assertNull(ZipCentralDirectory.readEntryNames(new ByteArrayInputStream(new byte[0])));
+    }
+
+    private static byte[] createZip(boolean stored, String... names) throws IOException
+    {
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        ZipOutputStream outputStream = new ZipOutputStream(zip);
+        try
+        {
+            for (String name : names)
+            {
+                byte[] content = name.endsWith("/") ? new byte[0] : TarInputStreamTest.content(5000 + name.length());
+                ZipEntry entry = new ZipEntry(name);
+                if (stored)
+                {
+                    CRC32 crc = new CRC32();
+                    crc.update(content);
+                    entry.setMethod(ZipEntry.STORED);
+                    entry.setSize(content.length);
+                    entry.setCompressedSize(content.length);
+                    entry.setCrc(crc.getValue());
+                }
+                outputStream.putNextEntry(entry);
+                outputStream.write(content);
+                outputStream.closeEntry();
+            }
+        }
+        finally
+        {
+            outputStream.close();
+        }
+        return zip.toByteArray();
+    }
+
+    private static int indexOf(byte[] b, byte[] pattern)
+    {
+        for (int i = 0; i + pattern.length <= b.length; i++)
+            if (Arrays.equals(Arrays.copyOfRange(b, i, i + pattern.length), pattern))
+                return i;
+        return -1;
+    }
+}
@@ -0,0 +1,271 @@
+package com.castsoftware.dmt.extractor.mavenbuild;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@link ArchiveBudget} class enforces the resource limits of an extraction: uncompressed bytes, number of entries,
+ * compression ratio, nesting depth and wall time, for the archive being extracted and for the whole run. <BR>
+ * The limits are checked while the entries are streamed. Once a limit is exceeded the budget stays exceeded until the
+ * next archive starts: every following read or write of the archive fails so that the extraction unwinds quickly,
+ * whatever the number of nested archives. The files created for the archive are recorded so that its partial output
+ * can be removed. <BR>
+ * Every byte written goes through {@link #onWrite(File, long)}, the copies of the nested archives included: a copy is
+ * charged while it is on disk, so that a small archive holding a large nested one is stopped, and its charge is
+ * released once it has been extracted and removed.
+ */
+class ArchiveBudget
+{
+    /** The compression ratio is only checked once this number of bytes has been written */
+    private static final long RATIO_THRESHOLD = 1024 * 1024;
+
+    private final long maxArchiveBytes;
+    private final long maxArchiveEntries;
+    private final double maxRatio;
+    private final int maxDepth;
+    private final long maxArchiveMillis;
+    private final long maxRunBytes;
+    private final long maxRunEntries;
+    private final long maxRunMillis;
+
+    private final long runStart = System.currentTimeMillis();
+    private long runBytes = 0;
+    private long runEntries = 0;
+    private String runExceededReason = null;
+
+    private long archiveStart;
+    private long archiveLength;
+    private long archiveBytes;
+    private long archiveEntries;
+    private int depth;
+    private String exceededReason;
+    private final List<File> createdFiles = new ArrayList<File>();
+    /** The bytes charged for each nested archive copy still on disk */
+    private final Map<File, Long> temporaryFiles = new HashMap<File, Long>();
+
+    /**
+     * The failure of a read or a write once the budget is exceeded.
+     */
+    static final class ExceededException extends IOException
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final String reason;
+
+        ExceededException(String reason)
+        {
+            super("Extraction budget exceeded: " + reason);
+            this.reason = reason;
+        }
+
+        String getReason()
+        {
+            return reason;
+        }
+    }
+
+    ArchiveBudget(long maxArchiveBytes, long maxArchiveEntries, double maxRatio, int maxDepth, long maxArchiveMillis,
+        long maxRunBytes, long maxRunEntries, long maxRunMillis)
+    {
+        this.maxArchiveBytes = maxArchiveBytes;
+        this.maxArchiveEntries = maxArchiveEntries;
+        this.maxRatio = maxRatio;
+        this.maxDepth = maxDepth;
+        this.maxArchiveMillis = maxArchiveMillis;
+        this.maxRunBytes = maxRunBytes;
+        this.maxRunEntries = maxRunEntries;
+        this.maxRunMillis = maxRunMillis;
+    }
+
+    /**
+     * Resets the archive counters before the extraction of an archive of the delivery.
+     *
+     * @param archive
+     *            the archive file, its size being the reference of the compression ratio
+     */
+    synchronized void startArchive(File archive)
+    {
+        archiveStart = System.currentTimeMillis();
+        archiveLength = Math.max(1, archive.length());
+        archiveBytes = 0;
+        archiveEntries = 0;
+        depth = 0;
+        exceededReason = null;
+        createdFiles.clear();
+        releaseTemporaryFiles();
+    }
+
+    /**
+     * Enters an archive, nested or not.
+     *
+     * @throws IOException
+     *             when the nesting depth is exceeded
+     */
+    synchronized void enterArchive() throws IOException
+    {
+        depth++;
+        if (maxDepth > 0 && depth > maxDepth)
+            exceed("nesting depth " + depth + " > " + maxDepth);
+        check();
+    }
+
+    synchronized void leaveArchive()
+    {
+        depth--;
+    }
+
+    /**
+     * Records the creation of an extracted file.
+     *
+     * @throws IOException
+     *             when a limit is exceeded
+     */
+    synchronized void onFileCreated(File file) throws IOException
+    {
+        check();
+        createdFiles.add(file);
+        archiveEntries++;
+        runEntries++;
+        if (maxArchiveEntries > 0 && archiveEntries > maxArchiveEntries)
+            exceed("entries > " + maxArchiveEntries);
+        if (maxRunEntries > 0 && runEntries > maxRunEntries)
+            exceedRun("entries > " + maxRunEntries);
+    }
+
+    /**
+     * Records the creation of a nested archive copied to be extracted then removed. It is not an entry of the output,
+     * but its bytes are charged until {@link #onTemporaryFileDeleted(File)}, and it is removed with the partial output.
+     *
+     * @throws IOException
+     *             when the budget is already exceeded
+     */
+    synchronized void onTemporaryFileCreated(File file) throws IOException
+    {
+        check();
+        createdFiles.add(file);
+        temporaryFiles.put(file, Long.valueOf(0));
+    }
+
+    /**
+     * Releases the charge of a nested archive copy once it has been removed.
+     */
+    synchronized void onTemporaryFileDeleted(File file)
+    {
+        Long bytes = temporaryFiles.remove(file);
+        if (bytes == null)
+            return;
+        createdFiles.remove(file);
+        archiveBytes -= bytes.longValue();
+        runBytes -= bytes.longValue();
+    }
+
+    /**
+     * Records bytes about to be written to a file.
+     *
+     * @throws IOException
+     *             when a limit is exceeded
+     */
+    synchronized void onWrite(File file, long bytes) throws IOException
+    {
+        check();
+        Long temporaryBytes = temporaryFiles.get(file);
+        if (temporaryBytes != null)
+            temporaryFiles.put(file, Long.valueOf(temporaryBytes.longValue() + bytes));
+        archiveBytes += bytes;
+        runBytes += bytes;
+        if (maxArchiveBytes > 0 && archiveBytes > maxArchiveBytes)
+            exceed("uncompressed bytes > " + maxArchiveBytes);
+        if (maxRatio > 0 && archiveBytes > RATIO_THRESHOLD && archiveBytes > maxRatio * archiveLength)
+            exceed("compression ratio > " + maxRatio);
+        if (maxRunBytes > 0 && runBytes > maxRunBytes)
+            exceedRun("uncompressed bytes > " + maxRunBytes);
+    }
+
+    /**
+     * Checks the wall time limits and fails when the budget is already exceeded.
+     *
+     * @throws IOException
+     *             when a limit is exceeded
+     */
+    synchronized void check() throws IOException
+    {
+        if (exceededReason != null)
+            throw new ExceededException(exceededReason);
+        long now = System.currentTimeMillis();
+        if (maxArchiveMillis > 0 && now - archiveStart > maxArchiveMillis)
+            exceed("wall time > " + maxArchiveMillis + " ms");
+        if (maxRunMillis > 0 && now - runStart > maxRunMillis)
+            exceedRun("wall time > " + maxRunMillis + " ms");
+    }
+
+    private void exceed(String reason) throws IOException
+    {
+        if (exceededReason == null)
+            exceededReason = reason;
+        throw new ExceededException(exceededReason);
+    }
+
+    private void exceedRun(String reason) throws IOException
+    {
+        if (runExceededReason == null)
+            runExceededReason = reason;
+        exceed("run " + reason);
+    }
+
+    /**
+     * @return the reason why the current archive exceeded its budget, null when it did not
+     */
+    synchronized String getExceededReason()
+    {
+        return exceededReason;
+    }
+
+    /**
+     * @return the reason why the run exceeded its budget, null when it did not
+     */
+    synchronized String getRunExceededReason()
+    {
+        if (runExceededReason == null && maxRunMillis > 0 && System.currentTimeMillis() - runStart > maxRunMillis)
+            runExceededReason = "wall time > " + maxRunMillis + " ms";
+        return runExceededReason;
+    }
+
+    /**
+     * Removes the files created since the archive started, and the folders left empty up to the given folder.
+     *
+     * @param rootFolder
+     *            the folder where the cleaning stops
+     */
+    synchronized void removeArchiveOutput(File rootFolder)
+    {
+        for (int i = createdFiles.size() - 1; i >= 0; i--)
+        {
+            File file = createdFiles.get(i);
+            file.delete();
+            for (File parent = file.getParentFile(); parent != null && !parent.equals(rootFolder); parent = parent
+                .getParentFile())
+            {
+                String[] children = parent.list();
+                if (children == null || children.length > 0 || !parent.delete())
+                    break;
+            }
+        }
+        createdFiles.clear();
+        releaseTemporaryFiles();
+    }
+
+    /**
+     * Releases the run charge of the nested archive copies left by an aborted archive, which are removed with its
+     * output.
+     */
+    private void releaseTemporaryFiles()
+    {
+        for (Long bytes : temporaryFiles.values())
+            runBytes -= bytes.longValue();
+        temporaryFiles.clear();
+    }
+}
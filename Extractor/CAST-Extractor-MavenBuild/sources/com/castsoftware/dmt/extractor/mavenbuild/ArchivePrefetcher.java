@@ -0,0 +1,397 @@
+package com.castsoftware.dmt.extractor.mavenbuild;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@link ArchivePrefetcher} class reads the next archives of the extraction ahead, on background threads, while the
+ * current archive is extracted, so that a drop folder on a high latency share does not stall the extraction at every
+ * archive boundary. <BR>
+ * The archives are read in the extraction order, at most a given number ahead of the archive being extracted. Without
+ * staging folder, they are read and discarded to warm the page cache, and the extraction reads them again from the
+ * drop folder. With a staging folder, they are copied there, within a bounded size, and the extraction reads the local
+ * copy, which is removed once read. An archive the extraction skips is released when a later one is opened.
+ */
+final class ArchivePrefetcher
+{
+    private static final int NONE = 0;
+    private static final int FETCHING = 1;
+    private static final int DONE = 2;
+    /** Not prefetched (failure, or larger than the staging folder), the extraction reads it from the drop folder */
+    private static final int SKIPPED = 3;
+    private static final int CONSUMED = 4;
+
+    private static final int MAX_THREADS = 4;
+
+    private final File[] archives;
+    private final Map<File, Integer> positions = new HashMap<File, Integer>();
+    private final int ahead;
+    private final File stagingFolder;
+    private final long maxStagingBytes;
+    private final IoThrottle throttle;
+
+    private final int[] states;
+    private final File[] stagedFiles;
+    private final long[] stagedLengths;
+    private final Thread[] threads;
+    /** The next archive to prefetch */
+    private int next = 0;
+    /** The archive being extracted, -1 before the first one */
+    private int current = -1;
+    private long stagedBytes = 0;
+    /** Read out of the lock by the copy loops, so that closing does not wait for the end of their archive */
+    private volatile boolean closed = false;
+
+    private int hits = 0;
+    private int lateHits = 0;
+    private int misses = 0;
+    private long stallNanos = 0;
+    private long prefetchedBytes = 0;
+
+    /**
+     * @param archives
+     *            the archives in the extraction order
+     * @param ahead
+     *            the number of archives read ahead of the one being extracted
+     * @param stagingFolder
+     *            the folder where the archives are copied, null to only warm the page cache
+     * @param throttle
+     *            the read throttle of the drop folder, null for none
+     */
+    ArchivePrefetcher(List<File> archives, int ahead, File stagingFolder, long maxStagingBytes, IoThrottle throttle)
+    {
+        this.archives = archives.toArray(new File[archives.size()]);
+        this.ahead = ahead;
+        this.stagingFolder = stagingFolder;
+        this.maxStagingBytes = maxStagingBytes;
+        this.throttle = throttle;
+        for (int i = this.archives.length - 1; i >= 0; i--)
+            positions.put(this.archives[i], i);
+        states = new int[this.archives.length];
+        stagedFiles = new File[this.archives.length];
+        stagedLengths = new long[this.archives.length];
+        threads = new Thread[Math.min(ahead, MAX_THREADS)];
+    }
+
+    void start()
+    {
+        if (stagingFolder != null)
+            stagingFolder.mkdirs();
+        for (int i = 0; i < threads.length; i++)
+        {
+            threads[i] = new Thread(new Runnable()
+            {
+                public void run()
+                {
+                    prefetch();
+                }
+            }, "MavenBuildExtractor-prefetch-" + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+    }
+
+    private void prefetch()
+    {
+        while (true)
+        {
+            int position;
+            synchronized (this)
+            {
+                while (!closed && next < archives.length && next > current + ahead)
+                    waitQuietly();
+                if (closed || next >= archives.length)
+                    return;
+                position = next++;
+                if (states[position] != NONE || position <= current)
+                    continue;
+                states[position] = FETCHING;
+            }
+
+            File stagedFile = null;
+            if (stagingFolder != null)
+            {
+                // the size is read out of the lock, it is a round trip to the drop folder
+                long length = archives[position].length();
+                synchronized (this)
+                {
+                    while (!closed && states[position] == FETCHING && position >= current && length <= maxStagingBytes
+                        && stagedBytes + length > maxStagingBytes)
+                        waitQuietly();
+                    if (states[position] != FETCHING)
+                        continue; // opened by the extraction in the meantime
+                    if (closed || position < current || length > maxStagingBytes)
+                    {
+                        states[position] = SKIPPED;
+                        notifyAll();
+                        continue;
+                    }
+                    try
+                    {
+                        // a name of its own, the staging folder may be shared by several runs
+                        stagedFile = File.createTempFile("prefetch-" + position + "-", "-"
+                            + archives[position].getName(), stagingFolder);
+                    }
+                    catch (IOException e)
+                    {
+                        states[position] = SKIPPED;
+                        notifyAll();
+                        continue;
+                    }
+                    stagedBytes += length;
+                    stagedLengths[position] = length;
+                    stagedFiles[position] = stagedFile;
+                }
+            }
+
+            long bytes;
+            try
+            {
+                bytes = read(archives[position], stagedFile);
+            }
+            catch (IOException e)
+            {
+                bytes = -1;
+            }
+
+            synchronized (this)
+            {
+                if (bytes >= 0)
+                    prefetchedBytes += bytes;
+                if (bytes < 0 || stagedFile != null && (closed || position < current))
+                {
+                    // failed, or skipped by the extraction while it was read
+                    release(position);
+                    states[position] = SKIPPED;
+                }
+                else
+                    states[position] = DONE;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Reads an archive of the drop folder, to the staging file when there is one.
+     *
+     * @return the number of bytes read, -1 when the prefetcher has been closed in the meantime
+     */
+    private long read(File archive, File stagedFile) throws IOException
+    {
+        InputStream inputStream = new FileInputStream(archive);
+        if (throttle != null && throttle.isEnabled())
+            inputStream = new ThrottledInputStream(inputStream, throttle);
+        try
+        {
+            OutputStream outputStream = stagedFile == null ? null : new FileOutputStream(stagedFile);
+            try
+            {
+                byte[] buf = new byte[64 * 1024];
+                long bytes = 0;
+                int n;
+                while ((n = inputStream.read(buf)) > 0)
+                {
+                    if (closed)
+                        return -1;
+                    if (outputStream != null)
+                        outputStream.write(buf, 0, n);
+                    bytes += n;
+                }
+                return bytes;
+            }
+            finally
+            {
+                if (outputStream != null)
+                    outputStream.close();
+            }
+        }
+        finally
+        {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Opens an archive for the extraction: its staged copy when it has been prefetched in the staging folder, the
+     * archive of the drop folder otherwise. The archives prefetched before it and not opened are released.
+     *
+     * @return the content of the archive, to be closed by the caller
+     */
+    InputStream open(File archive) throws IOException
+    {
+        Integer position = positions.get(archive);
+        if (position == null)
+            return new FileInputStream(archive);
+
+        File stagedFile = null;
+        synchronized (this)
+        {
+            if (position > current)
+            {
+                // the archives before are done or skipped, including a staged copy left open by a failed extraction
+                for (int i = Math.max(current, 0); i < position; i++)
+                    if (states[i] == DONE || states[i] == CONSUMED)
+                    {
+                        release(i);
+                        states[i] = CONSUMED;
+                    }
+                current = position;
+                notifyAll();
+            }
+            if (states[position] == FETCHING && stagingFolder != null && stagedFiles[position] == null)
+            {
+                // still waiting for room in the staging folder, it is read from the drop folder
+                misses++;
+                states[position] = CONSUMED;
+            }
+            if (states[position] == FETCHING)
+            {
+                long start = System.nanoTime();
+                while (states[position] == FETCHING)
+                    waitQuietly();
+                stallNanos += System.nanoTime() - start;
+                if (states[position] == DONE)
+                    lateHits++;
+            }
+            else if (states[position] == DONE)
+                hits++;
+            else if (states[position] == NONE)
+                misses++;
+            if (states[position] == DONE)
+                stagedFile = stagedFiles[position];
+            states[position] = CONSUMED;
+        }
+
+        if (stagedFile == null)
+            return new FileInputStream(archive);
+        return new StagedInputStream(new FileInputStream(stagedFile), position);
+    }
+
+    /**
+     * The content of an archive copied in the staging folder, the copy being removed when it is closed.
+     */
+    final class StagedInputStream extends FilterInputStream
+    {
+        private final int position;
+
+        StagedInputStream(InputStream in, int position)
+        {
+            super(in);
+            this.position = position;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            super.close();
+            synchronized (ArchivePrefetcher.this)
+            {
+                release(position);
+                ArchivePrefetcher.this.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Removes a staged copy, if any, and frees its room in the staging folder.
+     */
+    private void release(int position)
+    {
+        if (stagedFiles[position] == null)
+            return;
+        stagedFiles[position].delete();
+        stagedFiles[position] = null;
+        stagedBytes -= stagedLengths[position];
+    }
+
+    private void waitQuietly()
+    {
+        try
+        {
+            wait();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            closed = true;
+        }
+    }
+
+    /**
+     * Stops the prefetch and removes the staged copies that were not read.
+     */
+    void close()
+    {
+        synchronized (this)
+        {
+            closed = true;
+            notifyAll();
+        }
+        for (Thread thread : threads)
+        {
+            try
+            {
+                if (thread != null)
+                    thread.join();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this)
+        {
+            for (int i = 0; i < archives.length; i++)
+                if (states[i] != CONSUMED)
+                    release(i);
+        }
+    }
+
+    /**
+     * @return the number of archives prefetched before the extraction opened them
+     */
+    synchronized int getHits()
+    {
+        return hits;
+    }
+
+    /**
+     * @return the number of archives the extraction waited for, their prefetch being in progress
+     */
+    synchronized int getLateHits()
+    {
+        return lateHits;
+    }
+
+    /**
+     * @return the number of archives opened before their prefetch started
+     */
+    synchronized int getMisses()
+    {
+        return misses;
+    }
+
+    /**
+     * @return the time the extraction waited for the prefetch of the archives it opened
+     */
+    synchronized long getStallMillis()
+    {
+        return stallNanos / 1000000;
+    }
+
+    /**
+     * @return the number of bytes read ahead from the drop folder
+     */
+    synchronized long getPrefetchedBytes()
+    {
+        return prefetchedBytes;
+    }
+}
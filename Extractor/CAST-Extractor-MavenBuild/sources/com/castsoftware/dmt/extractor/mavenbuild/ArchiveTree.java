@@ -0,0 +1,319 @@
+package com.castsoftware.dmt.extractor.mavenbuild;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+/**
+ * The {@link ArchiveTree} class provides the browsing tree of a drop folder: its sub folders and matched archives, and
+ * for each archive the nested archives the extraction would process (EAR of a DAR, WAR of an EAR, WEB-INF/lib jars of
+ * a WAR). <BR>
+ * The tree is built lazily, one level at a time, from the folder listings and the archive central directories; a
+ * nested archive is streamed up to its central directory, the entries whose size is known being skipped without being
+ * inflated. Inside an archive the tree has a level per folder of the entry names (WEB-INF, then lib, then the jars),
+ * so that each node name is a single path segment. The nested archives of each archive are cached by path, size and
+ * modification time so that a repeated expansion does not touch the file system again.
+ */
+final class ArchiveTree
+{
+    private static final int MAX_CACHED_LEVELS = 10000;
+
+    /**
+     * A child of a browsed path.
+     */
+    static final class Node
+    {
+        final String name;
+        final boolean hasChildren;
+
+        Node(String name, boolean hasChildren)
+        {
+            this.name = name;
+            this.hasChildren = hasChildren;
+        }
+    }
+
+    private static final class CachedLevel
+    {
+        final long lastModified;
+        final long length;
+        /** The children of a folder */
+        final List<Node> children;
+        /** The entry names of the nested archives of an archive */
+        final List<String> entryNames;
+
+        CachedLevel(long lastModified, long length, List<Node> children, List<String> entryNames)
+        {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.children = children;
+            this.entryNames = entryNames;
+        }
+    }
+
+    private static final Map<String, CachedLevel> cache = new LinkedHashMap<String, CachedLevel>(256, 0.75f, true)
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedLevel> eldest)
+        {
+            return size() > MAX_CACHED_LEVELS;
+        }
+    };
+
+    private ArchiveTree()
+    {
+        // NOP
+    }
+
+    /**
+     * @param scanIndex
+     *            the scan index of the drop folder, used for the folders it holds up to date
+     * @param rootFolder
+     *            the drop folder
+     * @param path
+     *            the browsed path, relative to the drop folder, '/' separated; the archives, the folders of their entries
+     *            and their nested archives are path segments
+     * @return the children of the path, empty when the path does not exist
+     */
+    static List<Node> getChildren(ScanIndex scanIndex, File rootFolder, String path) throws IOException
+    {
+        String[] segments = path.replace('\\', '/').split("/");
+        File current = rootFolder;
+        int i = 0;
+        for (; i < segments.length; i++)
+        {
+            if (segments[i].isEmpty())
+                continue;
+            File child = new File(current, segments[i]);
+            if (!child.isDirectory())
+                break;
+            current = child;
+        }
+        if (i == segments.length)
+            return getFolderChildren(scanIndex, current);
+
+        File archive = new File(current, segments[i]);
+        if (!archive.isFile())
+            return Collections.emptyList();
+        List<String> nestedPath = new ArrayList<String>();
+        for (i++; i < segments.length; i++)
+            if (!segments[i].isEmpty())
+                nestedPath.add(segments[i]);
+        return getArchiveChildren(archive, nestedPath);
+    }
+
+    private static List<Node> getFolderChildren(ScanIndex scanIndex, File folder)
+    {
+        String cacheKey = folder.getAbsolutePath();
+        CachedLevel level = getCached(cacheKey, folder.lastModified(), 0);
+        if (level != null)
+            return level.children;
+
+        List<Node> children = new ArrayList<Node>();
+        ScanIndex.Folder indexed = scanIndex == null ? null : scanIndex.getFolder(folder);
+        if (indexed != null)
+        {
+            List<String> subFolders = new ArrayList<String>(indexed.subFolders);
+            Collections.sort(subFolders);
+            for (String subFolder : subFolders)
+                children.add(new Node(subFolder, true));
+            List<String> names = new ArrayList<String>();
+            for (ScanIndex.FileEntry file : indexed.files)
+                names.add(file.name);
+            Collections.sort(names);
+            for (String name : names)
+            {
+                String type = getArchiveType(name);
+                if (type != null)
+                    children.add(new Node(name, !"jar".equals(type)));
+            }
+            children = Collections.unmodifiableList(children);
+            putCached(cacheKey, new CachedLevel(indexed.lastModified, 0, children, null));
+            return children;
+        }
+
+        File[] files = folder.listFiles();
+        if (files != null)
+        {
+            Arrays.sort(files);
+            for (File f : files)
+            {
+                if (f.isDirectory())
+                    children.add(new Node(f.getName(), true));
+                else
+                {
+                    String type = getArchiveType(f.getName());
+                    if (type != null)
+                        children.add(new Node(f.getName(), !"jar".equals(type)));
+                }
+            }
+        }
+        children = Collections.unmodifiableList(children);
+        putCached(cacheKey, new CachedLevel(folder.lastModified(), 0, children, null));
+        return children;
+    }
+
+    private static List<Node> getArchiveChildren(File archive, List<String> nestedPath) throws IOException
+    {
+        // each segment names either a nested archive of the current archive or a folder of its entries
+        List<String> archivePath = new ArrayList<String>();
+        List<String> entryNames = getNestedArchives(archive, archivePath);
+        String folder = "";
+        for (String segment : nestedPath)
+        {
+            String entryName = folder + segment;
+            if (entryNames.contains(entryName))
+            {
+                archivePath.add(entryName);
+                entryNames = getNestedArchives(archive, archivePath);
+                folder = "";
+            }
+            else
+                folder = entryName + "/";
+        }
+
+        Map<String, Node> children = new LinkedHashMap<String, Node>();
+        for (String entryName : entryNames)
+        {
+            if (!entryName.startsWith(folder))
+                continue;
+            String name = entryName.substring(folder.length());
+            int pos = name.indexOf('/');
+            if (pos >= 0)
+                name = name.substring(0, pos);
+            if (!name.isEmpty() && !children.containsKey(name))
+                children.put(name, new Node(name, pos >= 0 || !"jar".equals(getArchiveType(name))));
+        }
+        return new ArrayList<Node>(children.values());
+    }
+
+    /**
+     * @param archivePath
+     *            the entry names of the nested archives leading to the listed archive, empty for the archive itself
+     * @return the entry names of the nested archives of an archive
+     */
+    private static List<String> getNestedArchives(File archive, List<String> archivePath) throws IOException
+    {
+        StringBuilder cacheKey = new StringBuilder(archive.getAbsolutePath());
+        for (String entryName : archivePath)
+            cacheKey.append("!/").append(entryName);
+        CachedLevel level = getCached(cacheKey.toString(), archive.lastModified(), archive.length());
+        if (level != null)
+            return level.entryNames;
+
+        String archiveName = archivePath.isEmpty() ? archive.getName() : archivePath.get(archivePath.size() - 1);
+        List<String> entryNames;
+        if ("jar".equals(getArchiveType(archiveName)))
+            entryNames = Collections.emptyList();
+        else if (archivePath.isEmpty())
+            entryNames = getNestedArchives(archiveName, ZipCentralDirectory.readEntryNames(archive));
+        else
+            entryNames = getNestedArchives(archiveName, readNestedEntryNames(archive, archivePath));
+        entryNames = Collections.unmodifiableList(entryNames);
+        putCached(cacheKey.toString(), new CachedLevel(archive.lastModified(), archive.length(), null, entryNames));
+        return entryNames;
+    }
+
+    /**
+     * @return the entry names of a nested archive, empty when it cannot be read
+     */
+    private static List<String> readNestedEntryNames(File archive, List<String> archivePath) throws IOException
+    {
+        ZipFile zipFile = new ZipFile(archive);
+        try
+        {
+            // the first nested archive is read from the archive, the deeper ones are streamed
+            ZipEntry entry = zipFile.getEntry(archivePath.get(0));
+            if (entry == null)
+                return Collections.emptyList();
+            InputStream inputStream = zipFile.getInputStream(entry);
+            for (int i = 1; i < archivePath.size(); i++)
+            {
+                ZipInputStream zipInputStream = new ZipInputStream(inputStream);
+                ZipEntry nestedEntry;
+                while ((nestedEntry = zipInputStream.getNextEntry()) != null)
+                    if (nestedEntry.getName().equals(archivePath.get(i)))
+                        break;
+                if (nestedEntry == null)
+                    return Collections.emptyList();
+                inputStream = zipInputStream;
+            }
+            List<String> names = ZipCentralDirectory.readEntryNames(inputStream);
+            if (names == null)
+                return Collections.emptyList();
+            return names;
+        }
+        finally
+        {
+            zipFile.close();
+        }
+    }
+
+    /**
+     * @return the nested archives the extraction processes for an archive: the EARs of a DAR, the WARs of an EAR and
+     *         the libraries of a WAR
+     */
+    private static List<String> getNestedArchives(String archiveName, List<String> entryNames)
+    {
+        List<String> nestedArchives = new ArrayList<String>();
+        String type = getArchiveType(archiveName);
+        for (String entryName : entryNames)
+        {
+            String lowerName = entryName.toLowerCase();
+            if ("dar".equals(type) && lowerName.endsWith(".ear"))
+                nestedArchives.add(entryName);
+            else if ("ear".equals(type) && lowerName.endsWith(".war"))
+                nestedArchives.add(entryName);
+            else if ("war".equals(type) && lowerName.startsWith("web-inf/lib/") && lowerName.endsWith(".jar"))
+                nestedArchives.add(entryName);
+        }
+        return nestedArchives;
+    }
+
+    /**
+     * @return the extension of an archive handled by the extraction (jar, dar, ear or war), null for other files
+     */
+    static String getArchiveType(String filename)
+    {
+        String lowerName = filename.toLowerCase();
+        if (lowerName.endsWith(".jar"))
+            return "jar";
+        if (lowerName.endsWith(".dar"))
+            return "dar";
+        if (lowerName.endsWith(".ear"))
+            return "ear";
+        if (lowerName.endsWith(".war"))
+            return "war";
+        return null;
+    }
+
+    private static CachedLevel getCached(String cacheKey, long lastModified, long length)
+    {
+        synchronized (cache)
+        {
+            CachedLevel level = cache.get(cacheKey);
+            if (level != null && level.lastModified == lastModified && level.length == length)
+                return level;
+            return null;
+        }
+    }
+
+    private static void putCached(String cacheKey, CachedLevel level)
+    {
+        synchronized (cache)
+        {
+            cache.put(cacheKey, level);
+        }
+    }
+}
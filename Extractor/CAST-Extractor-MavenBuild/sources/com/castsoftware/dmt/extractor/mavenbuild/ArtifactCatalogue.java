@@ -0,0 +1,328 @@
+package com.castsoftware.dmt.extractor.mavenbuild;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@link ArtifactCatalogue} class holds the archives of the delivery by key and type, in a compact form for the
+ * drop folders of millions of files. <BR>
+ * The folder paths are interned in a table, the key and file names are packed in a single char array, and the keys
+ * and artifacts are int-indexed records in primitive arrays. Each key holds the record of each of its types, so that
+ * the container and the matching jar of a key are paired in O(1), and a key is found through an open addressing
+ * table without building any String.
+ */
+final class ArtifactCatalogue
+{
+    static final int JAR = 0;
+    static final int DAR = 1;
+    static final int EAR = 2;
+    static final int WAR = 3;
+    static final int POM = 4;
+    private static final int NB_TYPES = 5;
+
+    /** The interned folder paths, for the keys and for the files */
+    private final List<String> folders = new ArrayList<String>();
+    private final Map<String, Integer> folderIds = new HashMap<String, Integer>();
+
+    /** The key and file names, packed */
+    private char[] names = new char[4096];
+    private int namesLength = 0;
+
+    /** The keys: folder, name and the record of each type, -1 for none */
+    private int nbKeys = 0;
+    private int[] keyFolders = new int[256];
+    private int[] keyNameOffsets = new int[256];
+    private int[] keyNameLengths = new int[256];
+    private final int[][] keyRecords = new int[NB_TYPES][256];
+
+    /** The open addressing table of the keys, holding key index + 1, 0 for an empty slot */
+    private int[] keyTable = new int[512];
+
+    /** The artifacts: parent folder and file name */
+    private int nbRecords = 0;
+    private int[] recordFolders = new int[256];
+    private int[] recordNameOffsets = new int[256];
+    private int[] recordNameLengths = new int[256];
+    /** The artifacts that are not plain files of the drop folder (archives of a build distribution) */
+    private final Map<Integer, File> recordFiles = new HashMap<Integer, File>();
+
+    ArtifactCatalogue()
+    {
+        for (int[] records : keyRecords)
+            Arrays.fill(records, -1);
+    }
+
+    /**
+     * Sets the archive of a type of a key, replacing the previous one, whose record is reused.
+     *
+     * @param keyFolder
+     *            the folder part of the key, empty for the drop folder
+     * @param keyName
+     *            the name-version part of the key
+     * @return the key index
+     */
+    int put(int type, String keyFolder, String keyName, File file)
+    {
+        int key = getOrAddKey(keyFolder, keyName);
+        int record = keyRecords[type][key];
+        if (record >= 0)
+            recordFiles.remove(record);
+        else
+        {
+            record = nbRecords++;
+            if (record == recordFolders.length)
+            {
+                int capacity = record * 2;
+                recordFolders = Arrays.copyOf(recordFolders, capacity);
+                recordNameOffsets = Arrays.copyOf(recordNameOffsets, capacity);
+                recordNameLengths = Arrays.copyOf(recordNameLengths, capacity);
+            }
+            recordNameLengths[record] = -1;
+        }
+        if (file instanceof AssemblyEntry)
+        {
+            recordFiles.put(record, file);
+            recordFolders[record] = -1;
+        }
+        else
+        {
+            recordFolders[record] = internFolder(file.getParent());
+            // the name of the replaced archive is overwritten when the new one fits
+            if (file.getName().length() > recordNameLengths[record])
+                recordNameOffsets[record] = addName(file.getName());
+            else
+                file.getName().getChars(0, file.getName().length(), names, recordNameOffsets[record]);
+            recordNameLengths[record] = file.getName().length();
+        }
+        keyRecords[type][key] = record;
+        return key;
+    }
+
+    /**
+     * @return the key index, -1 when the key is not in the catalogue
+     */
+    int getKey(String keyFolder, String keyName)
+    {
+        Integer folder = folderIds.get(keyFolder);
+        if (folder == null)
+            return -1;
+        int slot = findSlot(folder, keyName);
+        return keyTable[slot] - 1;
+    }
+
+    boolean has(int key, int type)
+    {
+        return keyRecords[type][key] >= 0;
+    }
+
+    /**
+     * @return the archive of a type of a key, null for none
+     */
+    File getFile(int key, int type)
+    {
+        int record = keyRecords[type][key];
+        if (record < 0)
+            return null;
+        if (recordFolders[record] < 0)
+            return recordFiles.get(record);
+        String folder = folders.get(recordFolders[record]);
+        String name = new String(names, recordNameOffsets[record], recordNameLengths[record]);
+        return folder == null ? new File(name) : new File(folder, name);
+    }
+
+    void remove(int key, int type)
+    {
+        keyRecords[type][key] = -1;
+    }
+
+    /**
+     * Removes all the archives of a key.
+     */
+    void removeKey(int key)
+    {
+        for (int type = 0; type < NB_TYPES; type++)
+            keyRecords[type][key] = -1;
+    }
+
+    /**
+     * @return the number of keys, the keys being indexed from 0 in insertion order
+     */
+    int getNbKeys()
+    {
+        return nbKeys;
+    }
+
+    /**
+     * @return the folder part of a key, empty for the drop folder
+     */
+    String getKeyFolder(int key)
+    {
+        return folders.get(keyFolders[key]);
+    }
+
+    /**
+     * @return the name-version part of a key
+     */
+    String getKeyName(int key)
+    {
+        return new String(names, keyNameOffsets[key], keyNameLengths[key]);
+    }
+
+    /**
+     * @return the key as "folder:name-version", as logged and written in the shard manifests
+     */
+    String getKeyString(int key)
+    {
+        return getKeyFolder(key) + ":" + getKeyName(key);
+    }
+
+    /**
+     * @return the number of artifacts of the catalogue, the removed ones excluded
+     */
+    int getNbArtifacts()
+    {
+        int nbArtifacts = 0;
+        for (int[] records : keyRecords)
+            for (int key = 0; key < nbKeys; key++)
+                if (records[key] != -1)
+                    nbArtifacts++;
+        return nbArtifacts;
+    }
+
+    /**
+     * @return an estimation of the heap used by the catalogue, from the capacity of its arrays and an average cost of
+     *         its folders and distribution archives, not a measure
+     */
+    long getEstimatedMemoryBytes()
+    {
+        long bytes = names.length * 2L;
+        bytes += (keyFolders.length + keyNameOffsets.length + keyNameLengths.length + keyTable.length) * 4L;
+        bytes += keyRecords[0].length * 4L * NB_TYPES;
+        bytes += (recordFolders.length + recordNameOffsets.length + recordNameLengths.length) * 4L;
+        // an interned folder costs its String and its table entries
+        for (String folder : folders)
+            bytes += 64 + (folder == null ? 0 : folder.length() * 2L);
+        // an archive of a build distribution keeps its File
+        bytes += recordFiles.size() * 200L;
+        return bytes;
+    }
+
+    private int getOrAddKey(String keyFolder, String keyName)
+    {
+        int folder = internFolder(keyFolder);
+        int slot = findSlot(folder, keyName);
+        if (keyTable[slot] != 0)
+            return keyTable[slot] - 1;
+
+        int key = nbKeys++;
+        if (key == keyFolders.length)
+        {
+            int capacity = key * 2;
+            keyFolders = Arrays.copyOf(keyFolders, capacity);
+            keyNameOffsets = Arrays.copyOf(keyNameOffsets, capacity);
+            keyNameLengths = Arrays.copyOf(keyNameLengths, capacity);
+            for (int type = 0; type < NB_TYPES; type++)
+            {
+                keyRecords[type] = Arrays.copyOf(keyRecords[type], capacity);
+                Arrays.fill(keyRecords[type], key, capacity, -1);
+            }
+        }
+        keyFolders[key] = folder;
+        keyNameOffsets[key] = addName(keyName);
+        keyNameLengths[key] = keyName.length();
+        keyTable[slot] = key + 1;
+        if (nbKeys * 2 > keyTable.length)
+            rehash();
+        return key;
+    }
+
+    /**
+     * @return the slot of the key in the key table, or the empty slot where it would be added
+     */
+    private int findSlot(int folder, String keyName)
+    {
+        int mask = keyTable.length - 1;
+        int slot = hash(folder, keyName) & mask;
+        while (keyTable[slot] != 0)
+        {
+            int key = keyTable[slot] - 1;
+            if (keyFolders[key] == folder && nameEquals(keyNameOffsets[key], keyNameLengths[key], keyName))
+                return slot;
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash()
+    {
+        keyTable = new int[keyTable.length * 2];
+        int mask = keyTable.length - 1;
+        for (int key = 0; key < nbKeys; key++)
+        {
+            int h = folderHash(keyFolders[key]);
+            for (int i = 0; i < keyNameLengths[key]; i++)
+                h = 31 * h + names[keyNameOffsets[key] + i];
+            int slot = mix(h) & mask;
+            while (keyTable[slot] != 0)
+                slot = (slot + 1) & mask;
+            keyTable[slot] = key + 1;
+        }
+    }
+
+    private static int hash(int folder, String keyName)
+    {
+        int h = folderHash(folder);
+        for (int i = 0; i < keyName.length(); i++)
+            h = 31 * h + keyName.charAt(i);
+        return mix(h);
+    }
+
+    private static int folderHash(int folder)
+    {
+        return folder * 0x9E3779B9;
+    }
+
+    private static int mix(int h)
+    {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        return h;
+    }
+
+    private boolean nameEquals(int offset, int length, String name)
+    {
+        if (length != name.length())
+            return false;
+        for (int i = 0; i < length; i++)
+            if (names[offset + i] != name.charAt(i))
+                return false;
+        return true;
+    }
+
+    private int addName(String name)
+    {
+        if (namesLength + name.length() > names.length)
+            names = Arrays.copyOf(names, Math.max(names.length * 2, namesLength + name.length()));
+        name.getChars(0, name.length(), names, namesLength);
+        int offset = namesLength;
+        namesLength += name.length();
+        return offset;
+    }
+
+    private int internFolder(String folder)
+    {
+        Integer id = folderIds.get(folder);
+        if (id == null)
+        {
+            id = folders.size();
+            folders.add(folder);
+            folderIds.put(folder, id);
+        }
+        return id;
+    }
+}
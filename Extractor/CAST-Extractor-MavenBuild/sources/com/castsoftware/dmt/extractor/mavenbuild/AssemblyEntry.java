@@ -0,0 +1,68 @@
+package com.castsoftware.dmt.extractor.mavenbuild;
+
+import java.io.File;
+
+/**
+ * The {@link AssemblyEntry} class is an archive contained in a build distribution (*-bin.zip, *.tar.gz), seen as a file of
+ * the delivery so that it is matched and extracted like the other archives. Its path is the path of the distribution
+ * followed by the entry names, separated by "!/"; its content is read through the {@link AssemblyReader}.
+ */
+final class AssemblyEntry extends File
+{
+    private static final long serialVersionUID = 1L;
+
+    /** The build distribution file of the delivery */
+    final File assembly;
+    /** The entry names, from the distribution down to the archive when distributions are nested */
+    final String[] entryNames;
+    /** The index of the outer entry in a tar distribution, the first entry being 1 */
+    final int position;
+    private final long size;
+
+    AssemblyEntry(File assembly, String[] entryNames, int position, long size)
+    {
+        super(getEntryPath(assembly, entryNames));
+        this.assembly = assembly;
+        this.entryNames = entryNames;
+        this.position = position;
+        this.size = size;
+    }
+
+    private static String getEntryPath(File assembly, String[] entryNames)
+    {
+        StringBuilder path = new StringBuilder(assembly.getPath());
+        for (String entryName : entryNames)
+            path.append("!/").append(entryName);
+        return path.toString();
+    }
+
+    @Override
+    public long length()
+    {
+        return size;
+    }
+
+    @Override
+    public long lastModified()
+    {
+        return assembly.lastModified();
+    }
+
+    @Override
+    public boolean exists()
+    {
+        return true;
+    }
+
+    @Override
+    public boolean isFile()
+    {
+        return true;
+    }
+
+    @Override
+    public boolean isDirectory()
+    {
+        return false;
+    }
+}
@@ -0,0 +1,307 @@
+package com.castsoftware.dmt.extractor.mavenbuild;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+/**
+ * The {@link AssemblyReader} class reads the build distributions of the delivery (*-bin.zip, *-dist.zip, *.tar.gz and
+ * *.tgz assemblies): it lists the archives and poms they contain, recursing into the nested distributions, and streams
+ * these archives to the extraction without staging the distribution on disk. <BR>
+ * The gzip layer is decoded by a {@link PipelinedGzipInputStream}. A few forward cursors are kept on each tar
+ * distribution, so that the archives read in the distribution order, or in a few interleaved passes (the types
+ * extracted one after the other, the poms next to their archives), are decoded once per pass instead of once per
+ * archive.
+ */
+final class AssemblyReader
+{
+    /** Maximum number of cursors kept on a tar distribution */
+    private static final int MAX_CURSORS = 4;
+    /** The classifiers of the zip files built as distributions, the other zip files being left alone */
+    private static final String[] ZIP_CLASSIFIERS = { "-bin.zip", "-dist.zip", "-distribution.zip", "-assembly.zip" };
+
+    /**
+     * A position in a tar distribution.
+     */
+    private static final class Cursor
+    {
+        final TarInputStream tar;
+        int position = 0;
+        TarInputStream.Entry entry = null;
+
+        Cursor(TarInputStream tar)
+        {
+            this.tar = tar;
+        }
+    }
+
+    /** The cursors of each tar distribution, the most recently used last */
+    private final Map<File, List<Cursor>> cursors = new HashMap<File, List<Cursor>>();
+    private final Map<File, ZipFile> zipFiles = new HashMap<File, ZipFile>();
+
+    /**
+     * @return the type of a build distribution (zip or tar.gz), null for other files
+     */
+    static String getAssemblyType(String filename)
+    {
+        String lowerName = filename.toLowerCase();
+        for (String classifier : ZIP_CLASSIFIERS)
+            if (lowerName.endsWith(classifier))
+                return "zip";
+        if (lowerName.endsWith(".tar.gz") || lowerName.endsWith(".tgz"))
+            return "tar.gz";
+        return null;
+    }
+
+    /**
+     * @return the archives and poms of a build distribution, in the distribution order
+     */
+    static List<AssemblyEntry> listEntries(File assembly) throws IOException
+    {
+        List<AssemblyEntry> entries = new ArrayList<AssemblyEntry>();
+        if ("zip".equals(getAssemblyType(assembly.getName())))
+        {
+            // the central directory gives the names and sizes, only the nested distributions are read
+            ZipFile zipFile = new ZipFile(assembly);
+            try
+            {
+                Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
+                while (zipEntries.hasMoreElements())
+                {
+                    ZipEntry zipEntry = zipEntries.nextElement();
+                    String[] entryNames = new String[] { zipEntry.getName() };
+                    String type = getAssemblyType(zipEntry.getName());
+                    if (zipEntry.isDirectory())
+                        continue;
+                    if (type != null)
+                        listStream(entries, assembly, entryNames, 0, type, zipFile.getInputStream(zipEntry));
+                    else if (isFileOfInterest(zipEntry.getName()))
+                        entries.add(new AssemblyEntry(assembly, entryNames, 0, zipEntry.getSize()));
+                }
+            }
+            finally
+            {
+                zipFile.close();
+            }
+        }
+        else
+            listStream(entries, assembly, new String[0], 0, "tar.gz", new FileInputStream(assembly));
+        return entries;
+    }
+
+    /**
+     * @return true for the archives and poms the extraction matches
+     */
+    private static boolean isFileOfInterest(String entryName)
+    {
+        return ArchiveTree.getArchiveType(entryName) != null || entryName.toLowerCase().endsWith(".pom.xml");
+    }
+
+    /**
+     * Lists the entries of a distribution read as a stream, and closes the stream.
+     */
+    private static void listStream(List<AssemblyEntry> entries, File assembly, String[] parentNames, int position,
+        String type, InputStream inputStream) throws IOException
+    {
+        try
+        {
+            if ("zip".equals(type))
+            {
+                ZipInputStream zipInputStream = new ZipInputStream(inputStream);
+                inputStream = zipInputStream;
+                ZipEntry zipEntry;
+                while ((zipEntry = zipInputStream.getNextEntry()) != null)
+                    if (!zipEntry.isDirectory())
+                        listEntry(entries, assembly, parentNames, position, zipEntry.getName(), zipEntry.getSize(),
+                            zipInputStream);
+            }
+            else
+            {
+                TarInputStream tarInputStream = new TarInputStream(new PipelinedGzipInputStream(inputStream));
+                inputStream = tarInputStream;
+                TarInputStream.Entry tarEntry;
+                int index = 0;
+                while ((tarEntry = tarInputStream.getNextEntry()) != null)
+                {
+                    index++;
+                    if (tarEntry.isFile)
+                        listEntry(entries, assembly, parentNames, parentNames.length == 0 ? index : position,
+                            tarEntry.name, tarEntry.size, tarInputStream);
+                }
+            }
+        }
+        finally
+        {
+            inputStream.close();
+        }
+    }
+
+    private static void listEntry(List<AssemblyEntry> entries, File assembly, String[] parentNames, int position,
+        String entryName, long size, InputStream content) throws IOException
+    {
+        String[] entryNames = new String[parentNames.length + 1];
+        System.arraycopy(parentNames, 0, entryNames, 0, parentNames.length);
+        entryNames[parentNames.length] = entryName;
+        String type = getAssemblyType(entryName);
+        if (type != null)
+            listStream(entries, assembly, entryNames, position, type, new NonClosingInputStream(content));
+        else if (isFileOfInterest(entryName))
+        {
+            // the size of a streamed zip entry is only known once read, it is the reference of the budget ratio
+            if (size < 0)
+            {
+                size = 0;
+                byte[] buf = new byte[8192];
+                int n;
+                while ((n = content.read(buf)) > 0)
+                    size += n;
+            }
+            entries.add(new AssemblyEntry(assembly, entryNames, position, size));
+        }
+    }
+
+    /**
+     * Opens an archive of a build distribution.
+     *
+     * @return the content of the archive, to be closed by the caller
+     */
+    InputStream open(AssemblyEntry entry) throws IOException
+    {
+        String[] entryNames = entry.entryNames;
+        InputStream inputStream = openOuterEntry(entry);
+        for (int i = 1; i < entryNames.length && inputStream != null; i++)
+            inputStream = openNestedEntry(inputStream, getAssemblyType(entryNames[i - 1]), entryNames[i]);
+        if (inputStream == null)
+            throw new IOException("No such entry: " + entry.getPath());
+        return inputStream;
+    }
+
+    private InputStream openOuterEntry(AssemblyEntry entry) throws IOException
+    {
+        if ("zip".equals(getAssemblyType(entry.assembly.getName())))
+        {
+            ZipFile zipFile = zipFiles.get(entry.assembly);
+            if (zipFile == null)
+            {
+                zipFile = new ZipFile(entry.assembly);
+                zipFiles.put(entry.assembly, zipFile);
+            }
+            ZipEntry zipEntry = zipFile.getEntry(entry.entryNames[0]);
+            return zipEntry == null ? null : zipFile.getInputStream(zipEntry);
+        }
+
+        // the tar distribution is only decoded again when an entry before all the cursors is requested
+        List<Cursor> assemblyCursors = cursors.get(entry.assembly);
+        if (assemblyCursors == null)
+        {
+            assemblyCursors = new ArrayList<Cursor>();
+            cursors.put(entry.assembly, assemblyCursors);
+        }
+        Cursor cursor = null;
+        for (Cursor c : assemblyCursors)
+            if (c.position < entry.position && (cursor == null || c.position > cursor.position))
+                cursor = c;
+        if (cursor != null)
+            assemblyCursors.remove(cursor);
+        else
+        {
+            if (assemblyCursors.size() >= MAX_CURSORS)
+                assemblyCursors.remove(0).tar.close();
+            cursor = new Cursor(new TarInputStream(new PipelinedGzipInputStream(new FileInputStream(entry.assembly))));
+        }
+        assemblyCursors.add(cursor);
+        while (cursor.position < entry.position)
+        {
+            cursor.entry = cursor.tar.getNextEntry();
+            if (cursor.entry == null)
+                return null;
+            cursor.position++;
+        }
+        if (!cursor.entry.name.equals(entry.entryNames[0]))
+            return null;
+        return new NonClosingInputStream(cursor.tar);
+    }
+
+    private static InputStream openNestedEntry(InputStream inputStream, String type, String entryName)
+        throws IOException
+    {
+        if ("zip".equals(type))
+        {
+            ZipInputStream zipInputStream = new ZipInputStream(inputStream);
+            ZipEntry zipEntry;
+            while ((zipEntry = zipInputStream.getNextEntry()) != null)
+                if (zipEntry.getName().equals(entryName))
+                    return zipInputStream;
+            zipInputStream.close();
+            return null;
+        }
+        TarInputStream tarInputStream = new TarInputStream(new PipelinedGzipInputStream(inputStream));
+        TarInputStream.Entry tarEntry;
+        while ((tarEntry = tarInputStream.getNextEntry()) != null)
+            if (tarEntry.isFile && tarEntry.name.equals(entryName))
+                return tarInputStream;
+        tarInputStream.close();
+        return null;
+    }
+
+    /**
+     * Closes the distributions opened by the extraction.
+     */
+    void close()
+    {
+        for (List<Cursor> assemblyCursors : cursors.values())
+        {
+            for (Cursor cursor : assemblyCursors)
+            {
+                try
+                {
+                    cursor.tar.close();
+                }
+                catch (IOException e)
+                {
+                    // NOP
+                }
+            }
+        }
+        cursors.clear();
+        for (ZipFile zipFile : zipFiles.values())
+        {
+            try
+            {
+                zipFile.close();
+            }
+            catch (IOException e)
+            {
+                // NOP
+            }
+        }
+        zipFiles.clear();
+    }
+
+    /**
+     * The content of an entry read from a stream shared with the next entries.
+     */
+    private static final class NonClosingInputStream extends FilterInputStream
+    {
+        NonClosingInputStream(InputStream in)
+        {
+            super(in);
+        }
+
+        @Override
+        public void close()
+        {
+            // NOP
+        }
+    }
+}
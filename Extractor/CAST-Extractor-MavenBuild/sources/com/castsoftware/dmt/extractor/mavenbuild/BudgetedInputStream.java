@@ -0,0 +1,55 @@
+package com.castsoftware.dmt.extractor.mavenbuild;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The {@link BudgetedInputStream} class stops reading an archive as soon as its {@link ArchiveBudget} is exceeded, so
+ * that an aborted extraction does not keep inflating the rest of the archive.
+ */
+class BudgetedInputStream extends FilterInputStream
+{
+    private final ArchiveBudget budget;
+
+    BudgetedInputStream(InputStream in, ArchiveBudget budget)
+    {
+        super(in);
+        this.budget = budget;
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        check();
+        return in.read();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        check();
+        return in.read(b, off, len);
+    }
+
+    @Override
+    public long skip(long n) throws IOException
+    {
+        check();
+        return in.skip(n);
+    }
+
+    private void check() throws IOException
+    {
+        try
+        {
+            budget.check();
+        }
+        catch (IOException e)
+        {
+            // release the archive at once so that it is not kept open by the aborted extraction
+            in.close();
+            throw e;
+        }
+    }
+}
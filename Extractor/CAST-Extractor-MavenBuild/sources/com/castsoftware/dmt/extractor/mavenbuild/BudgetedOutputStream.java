@@ -0,0 +1,54 @@
+package com.castsoftware.dmt.extractor.mavenbuild;
+
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The {@link BudgetedOutputStream} class charges the written bytes to an {@link ArchiveBudget} before writing them.
+ */
+class BudgetedOutputStream extends FilterOutputStream
+{
+    private final ArchiveBudget budget;
+    private final File file;
+
+    /**
+     * @param file
+     *            the file written, to which the bytes are charged
+     */
+    BudgetedOutputStream(OutputStream out, ArchiveBudget budget, File file)
+    {
+        super(out);
+        this.budget = budget;
+        this.file = file;
+    }
+
+    @Override
+    public void write(int b) throws IOException
+    {
+        charge(1);
+        out.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+        charge(len);
+        out.write(b, off, len);
+    }
+
+    private void charge(long bytes) throws IOException
+    {
+        try
+        {
+            budget.onWrite(file, bytes);
+        }
+        catch (IOException e)
+        {
+            // release the file at once so that the partial output can be removed
+            out.close();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package com.castsoftware.dmt.extractor.mavenbuild;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The {@link ClassIndex} class is the structure of the classes of a binary jar: for each package its classes, with
+ * their access flags, super class and interfaces. It replaces the .class files of the jars delivered without sources,
+ * which are of no use as sources. <BR>
+ * Only the constant pool and the header of each class are read, nothing is loaded. The index of a jar is written as
+ * {@value #FILENAME} in the folder of its module, next to its pom, with the {@link java.io.DataOutput} encoding (big
+ * endian, strings in modified UTF-8):
+ *
+ * <pre>
+ * int    magic 0x4D424349 ("MBCI")
+ * short  version 1
+ * int    number of strings, then each string (writeUTF): package and class names, internal form ('/' separated)
+ * int    number of packages, then for each package:
+ *        int    package name
+ *        int    number of classes, then for each class:
+ *               int    simple name
+ *               short  access flags
+ *               int    super class full name, -1 for none
+ *               short  number of interfaces, then each interface full name
+ * </pre>
+ *
+ * where the names are indexes in the string table, which holds each name once, in the order of first use. <BR>
+ * The packages are sorted by name, the default package being the empty string, and the classes of a package are in
+ * the order of the jar. The simple name of a nested class is its binary name, <code>Outer$Inner</code> or
+ * <code>Outer$1</code> for an anonymous class. The access flags are the <code>access_flags</code> of the class file
+ * (0x0001 public, 0x0010 final, 0x0200 interface, 0x0400 abstract, 0x1000 synthetic, 0x2000 annotation, 0x4000 enum),
+ * not the flags of the InnerClasses attribute: a private or protected nested class is package private and its static
+ * modifier is not recorded. Only <code>java/lang/Object</code> and <code>module-info</code> have no super class, an
+ * interface having <code>java/lang/Object</code>. The .class files that cannot be read, truncated or of an unknown
+ * constant pool tag, are left out. <BR>
+ * A reader rejects a version it does not know: the version changes whenever the layout does.
+ */
+final class ClassIndex
+{
+    static final String FILENAME = "class-index.bin";
+
+    private static final int MAGIC = 0x4D424349;
+    private static final int VERSION = 1;
+
+    static final class ClassInfo
+    {
+        final String simpleName;
+        final int access;
+        final String superName;
+        final String[] interfaces;
+
+        ClassInfo(String simpleName, int access, String superName, String[] interfaces)
+        {
+            this.simpleName = simpleName;
+            this.access = access;
+            this.superName = superName;
+            this.interfaces = interfaces;
+        }
+    }
+
+    private final Map<String, List<ClassInfo>> packages = new TreeMap<String, List<ClassInfo>>();
+    private int nbClasses = 0;
+
+    /**
+     * Reads the header of a class and adds it to the index.
+     *
+     * @param classContent
+     *            the content of the .class file, read up to the interfaces
+     * @return false when the content is not a class file
+     */
+    boolean add(InputStream classContent) throws IOException
+    {
+        DataInputStream input = new DataInputStream(classContent);
+        try
+        {
+            if (input.readInt() != 0xCAFEBABE)
+                return false;
+            input.readUnsignedShort(); // minor version
+            input.readUnsignedShort(); // major version
+            int poolSize = input.readUnsignedShort();
+            String[] utf8 = new String[poolSize];
+            int[] classNames = new int[poolSize];
+            for (int i = 1; i < poolSize; i++)
+            {
+                int tag = input.readUnsignedByte();
+                switch (tag)
+                {
+                    case 1: // Utf8
+                        utf8[i] = input.readUTF();
+                        break;
+                    case 7: // Class
+                        classNames[i] = input.readUnsignedShort();
+                        break;
+                    case 8: // String
+                    case 16: // MethodType
+                    case 19: // Module
+                    case 20: // Package
+                        input.readUnsignedShort();
+                        break;
+                    case 15: // MethodHandle
+                        input.readUnsignedByte();
+                        input.readUnsignedShort();
+                        break;
+                    case 3: // Integer
+                    case 4: // Float
+                    case 9: // Fieldref
+                    case 10: // Methodref
+                    case 11: // InterfaceMethodref
+                    case 12: // NameAndType
+                    case 17: // Dynamic
+                    case 18: // InvokeDynamic
+                        input.readInt();
+                        break;
+                    case 5: // Long
+                    case 6: // Double
+                        input.readLong();
+                        i++;
+                        break;
+                    default:
+                        return false;
+                }
+            }
+            int access = input.readUnsignedShort();
+            String name = getClassName(utf8, classNames, input.readUnsignedShort());
+            String superName = getClassName(utf8, classNames, input.readUnsignedShort());
+            String[] interfaces = new String[input.readUnsignedShort()];
+            for (int i = 0; i < interfaces.length; i++)
+                interfaces[i] = getClassName(utf8, classNames, input.readUnsignedShort());
+            if (name == null)
+                return false;
+
+            int pos = name.lastIndexOf('/');
+            String packageName = pos < 0 ? "" : name.substring(0, pos);
+            List<ClassInfo> classes = packages.get(packageName);
+            if (classes == null)
+            {
+                classes = new ArrayList<ClassInfo>();
+                packages.put(packageName, classes);
+            }
+            classes.add(new ClassInfo(name.substring(pos + 1), access, superName, interfaces));
+            nbClasses++;
+            return true;
+        }
+        catch (EOFException e)
+        {
+            return false;
+        }
+        catch (ArrayIndexOutOfBoundsException e)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Reads an index written by {@link #write(OutputStream)}, the stream being left open.
+     *
+     * @throws IOException
+     *             when the content is not a class index of a known version, or is truncated
+     */
+    static ClassIndex read(InputStream inputStream) throws IOException
+    {
+        DataInputStream input = new DataInputStream(inputStream);
+        if (input.readInt() != MAGIC)
+            throw new IOException("Not a class index");
+        int version = input.readUnsignedShort();
+        if (version != VERSION)
+            throw new IOException("Unknown class index version " + version);
+        String[] strings = new String[input.readInt()];
+        for (int i = 0; i < strings.length; i++)
+            strings[i] = input.readUTF();
+        ClassIndex classIndex = new ClassIndex();
+        try
+        {
+            for (int nbPackages = input.readInt(); nbPackages > 0; nbPackages--)
+            {
+                String packageName = strings[input.readInt()];
+                List<ClassInfo> classes = new ArrayList<ClassInfo>();
+                for (int nbClasses = input.readInt(); nbClasses > 0; nbClasses--)
+                {
+                    String simpleName = strings[input.readInt()];
+                    int access = input.readUnsignedShort();
+                    int superName = input.readInt();
+                    String[] interfaces = new String[input.readUnsignedShort()];
+                    for (int i = 0; i < interfaces.length; i++)
+                    {
+                        int interfaceName = input.readInt();
+                        interfaces[i] = interfaceName < 0 ? null : strings[interfaceName];
+                    }
+                    classes.add(new ClassInfo(simpleName, access, superName < 0 ? null : strings[superName],
+                        interfaces));
+                }
+                classIndex.packages.put(packageName, classes);
+                classIndex.nbClasses += classes.size();
+            }
+        }
+        catch (ArrayIndexOutOfBoundsException e)
+        {
+            throw new IOException("Invalid string index in the class index");
+        }
+        return classIndex;
+    }
+
+    private static String getClassName(String[] utf8, int[] classNames, int index)
+    {
+        if (index == 0)
+            return null;
+        return utf8[classNames[index]];
+    }
+
+    /**
+     * @return the number of classes of the index
+     */
+    int size()
+    {
+        return nbClasses;
+    }
+
+    /**
+     * @param className
+     *            the full name of a class, internal form
+     * @return the class, null when it is not in the index
+     */
+    ClassInfo get(String className)
+    {
+        int pos = className.lastIndexOf('/');
+        List<ClassInfo> classes = packages.get(pos < 0 ? "" : className.substring(0, pos));
+        if (classes != null)
+            for (ClassInfo classInfo : classes)
+                if (classInfo.simpleName.equals(className.substring(pos + 1)))
+                    return classInfo;
+        return null;
+    }
+
+    /**
+     * Writes the index, the stream being left open.
+     */
+    void write(OutputStream outputStream) throws IOException
+    {
+        // the string table
+        List<String> strings = new ArrayList<String>();
+        Map<String, Integer> stringIndexes = new HashMap<String, Integer>();
+        for (Map.Entry<String, List<ClassInfo>> entry : packages.entrySet())
+        {
+            addString(strings, stringIndexes, entry.getKey());
+            for (ClassInfo classInfo : entry.getValue())
+            {
+                addString(strings, stringIndexes, classInfo.simpleName);
+                addString(strings, stringIndexes, classInfo.superName);
+                for (String interfaceName : classInfo.interfaces)
+                    addString(strings, stringIndexes, interfaceName);
+            }
+        }
+
+        DataOutputStream output = new DataOutputStream(outputStream);
+        output.writeInt(MAGIC);
+        output.writeShort(VERSION);
+        output.writeInt(strings.size());
+        for (String s : strings)
+            output.writeUTF(s);
+        output.writeInt(packages.size());
+        for (Map.Entry<String, List<ClassInfo>> entry : packages.entrySet())
+        {
+            output.writeInt(stringIndexes.get(entry.getKey()));
+            output.writeInt(entry.getValue().size());
+            for (ClassInfo classInfo : entry.getValue())
+            {
+                output.writeInt(stringIndexes.get(classInfo.simpleName));
+                output.writeShort(classInfo.access);
+                output.writeInt(classInfo.superName == null ? -1 : stringIndexes.get(classInfo.superName));
+                output.writeShort(classInfo.interfaces.length);
+                for (String interfaceName : classInfo.interfaces)
+                    output.writeInt(interfaceName == null ? -1 : stringIndexes.get(interfaceName));
+            }
+        }
+        output.flush();
+    }
+
+    private static void addString(List<String> strings, Map<String, Integer> stringIndexes, String s)
+    {
+        if (s != null && !stringIndexes.containsKey(s))
+        {
+            stringIndexes.put(s, strings.size());
+            strings.add(s);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.castsoftware.dmt.extractor.mavenbuild;
+
+/**
+ * The {@link IoThrottle} class is a token bucket limiting a rate (bytes or files per second). <BR>
+ * The bucket holds at most one second of tokens so that a burst never exceeds the configured rate for long. A throttle
+ * built with a rate lower or equal to 0 is unlimited and never blocks.
+ */
+class IoThrottle
+{
+    private final double ratePerSecond;
+    private final double capacity;
+    private double tokens;
+    private long lastRefill;
+    private long throttledNanos = 0;
+    private long acquired = 0;
+
+    IoThrottle(double ratePerSecond)
+    {
+        this.ratePerSecond = ratePerSecond;
+        this.capacity = Math.max(1, ratePerSecond);
+        this.tokens = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * @return true when the throttle limits the rate
+     */
+    boolean isEnabled()
+    {
+        return ratePerSecond > 0;
+    }
+
+    /**
+     * Takes the given number of tokens, waiting for the bucket to refill when it is empty. The tokens are taken under
+     * the lock and the wait happens outside of it, so that the threads sharing the throttle queue up on the debt
+     * instead of on the monitor.
+     *
+     * @param permits
+     *            the number of tokens to take (bytes or files)
+     */
+    void acquire(long permits)
+    {
+        long waitNanos;
+        synchronized (this)
+        {
+            acquired += permits;
+            if (!isEnabled() || permits <= 0)
+                return;
+            refill();
+            tokens -= permits;
+            if (tokens >= 0)
+                return;
+            // the debt is paid by waiting for the time needed to refill it
+            waitNanos = (long) (-tokens / ratePerSecond * 1000000000L);
+        }
+
+        long start = System.nanoTime();
+        try
+        {
+            Thread.sleep(waitNanos / 1000000, (int) (waitNanos % 1000000));
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this)
+        {
+            throttledNanos += System.nanoTime() - start;
+        }
+    }
+
+    private void refill()
+    {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * ratePerSecond / 1000000000L);
+        lastRefill = now;
+    }
+
+    /**
+     * @return the time spent waiting for tokens, in milliseconds
+     */
+    synchronized long getThrottledMillis()
+    {
+        return throttledNanos / 1000000;
+    }
+
+    /**
+     * @return the total number of tokens taken, throttled or not
+     */
+    synchronized long getAcquired()
+    {
+        return acquired;
+    }
+}
@@ -7,13 +7,18 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.StringReader;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
@@ -27,7 +32,23 @@ import com.castsoftware.util.logger.exceptions.LogException;
  */
 public class MavenBuildExtractor extends AbstractBlankInitialRootExtractor
 {
-    Map<String, File> jarFiles, darFiles, earFiles, warFiles, pomFiles = null;
+    ArtifactCatalogue artifacts = null;
+    IoThrottle writeThrottle, readThrottle, filesThrottle = null;
+    ArchiveBudget budget = null;
+    File contentFolder = null;
+    AssemblyReader assemblyReader = null;
+    ScanIndex scanIndex = null;
+    IRootFactory moduleRootFactory = null;
+    Map<File, Integer> pendingModules = null;
+    boolean indexBinaryJars = false;
+    ShardManifest shardManifest = null;
+    Map<File, ModuleStatistics> moduleStatistics = null;
+    ModuleStatistics statistics = null;
+    ArchivePrefetcher prefetcher = null;
+    ModuleGraph moduleGraph = null;
+    ModuleGraph.Module graphModule = null;
+    int nbArtifacts = 0;
+    long catalogueEstimatedBytes = 0;
 
 	/**
 	 * Folder extractor constructor
@@ -35,11 +56,8 @@ public class MavenBuildExtractor extends AbstractBlankInitialRootExtractor
     public MavenBuildExtractor()
     {
         // NOP
-    	jarFiles = new HashMap<String, File>();
-    	darFiles = new HashMap<String, File>();
-    	earFiles = new HashMap<String, File>();
-    	warFiles = new HashMap<String, File>();
-    	pomFiles = new HashMap<String, File>();
+    	// the files are extracted in the scan order, the archives of a build distribution in the distribution order
+    	artifacts = new ArtifactCatalogue();
     }
 
     @Override
@@ -50,6 +68,9 @@ public class MavenBuildExtractor extends AbstractBlankInitialRootExtractor
             throw Logging.error("cast.dmt.extractor.mavenbuild.extractionURLNotAbsoluteFailure", "FILE", rootFile);
         if (!rootFile.exists())
             throw Logging.error("cast.dmt.extractor.mavenbuild.extractionURLNotFoundFailure", "FILE", rootFile);
+
+        // load the scan index of the previous runs
+        MavenBuildSettings.load(configuration).getScanIndex(rootFile);
     }
 
     @Override
@@ -62,8 +83,23 @@ public class MavenBuildExtractor extends AbstractBlankInitialRootExtractor
     @Override
     public void getChildren(Map<String, Iterable<BrowseEntry>> pathsChildren, IConfiguration configuration) throws LogException
     {
-    	// Not supported - action is hidden
-    	return;
+        File rootFile = new File(configuration.getURL());
+        ScanIndex scanIndex = MavenBuildSettings.load(configuration).getScanIndex(rootFile);
+        for (Map.Entry<String, Iterable<BrowseEntry>> pathChildren : pathsChildren.entrySet())
+        {
+        	String path = pathChildren.getKey() == null ? "" : pathChildren.getKey();
+        	List<BrowseEntry> children = new ArrayList<BrowseEntry>();
+        	try
+        	{
+        		for (ArchiveTree.Node node : ArchiveTree.getChildren(scanIndex, rootFile, path))
+        			children.add(new BrowseEntry(node.name, node.hasChildren));
+        	}
+        	catch (IOException e)
+        	{
+        		Logging.managedError(e, "cast.dmt.extractor.mavenbuild.directoryListingFailure", "DIR", path);
+        	}
+        	pathChildren.setValue(children);
+        }
     }
 
     private static String getKey(String filename, String extension)
@@ -102,64 +138,132 @@ public class MavenBuildExtractor extends AbstractBlankInitialRootExtractor
 			Logging.warn("cast.dmt.extractor.mavenbuild.invalidName", "FILE", filename);
     	return key;
     }
-    private void getFiles(File rootFolder, File subFolder)
+    private void getFiles(File rootFolder, ScanIndex scanIndex, String versionPolicy)
     {
-    	File root = rootFolder;
-    	if (subFolder != null)
-    		root = subFolder;
-    	for (File f : root.listFiles())
+    	Collection<ScanIndex.Folder> folders = scanIndex.getFolders();
+    	// the artifact folders of a repository layout, where only the selected version folder has been scanned
+    	Map<String, ScanIndex.Folder> artifactFolders = new HashMap<String, ScanIndex.Folder>();
+    	if (versionPolicy != null)
+    		for (ScanIndex.Folder folder : folders)
+    			if (folder.isArtifactFolder())
+    				artifactFolders.put(folder.relativePath, folder);
+
+    	for (ScanIndex.Folder folder : folders)
     	{
-    		if (f.isDirectory())
+    		File parentFolder = folder.relativePath.isEmpty() ? rootFolder : new File(rootFolder, folder.relativePath);
+    		ScanIndex.Folder artifactFolder = artifactFolders.get(folder.getParentPath());
+    		if (artifactFolder != null)
     		{
-    			getFiles(rootFolder, f);
+    			addRepositoryFiles(artifactFolder, folder, parentFolder);
     			continue;
     		}
-        	int rootFolderLength = rootFolder.getAbsolutePath().length() + 1;
-    		String filename = f.getName().toLowerCase();
-    		String folderParent = f.getParent();
-    		String fileRelativePath = ":";
-    		if (!folderParent.equals(rootFolder.getAbsolutePath()))
-    			fileRelativePath = folderParent.substring(rootFolderLength) + ":";
-    		
-    		if (filename.endsWith(".jar"))
-    		{
-				// specific jar filename KrankenAntragMDBEJB-1.0.39-sources.jar
-    			String key = filename;
-				if (key.contains("ejb-"))
-					key = key.replace("ejb-", "-");
-    			int pos = 0;
-    			if (key.contains("-sources.jar"))
-    				pos = key.length() - "-sources.jar".length();
-    			else
-    				pos = key.length() - ".jar".length();
-    			
-    			if (pos > 0)
-    				jarFiles.put(fileRelativePath + key.substring(0, pos), f);
-    		}
-    		else if (filename.endsWith(".dar"))
-    		{
-    			String key = getKey(filename, "dar");
-    			if (key != null)
-    				darFiles.put(fileRelativePath + key, f);
-    		}
-    		else if (filename.endsWith(".ear"))
+    		for (ScanIndex.FileEntry file : folder.files)
+    			addFile(folder.relativePath, new File(parentFolder, file.name));
+    	}
+    	scanIndex.saveAssemblies();
+    }
+
+    /**
+     * Adds the files of the selected version folder of an artifact in a repository layout. They are keyed as
+     * artifactId-version in the group folder, the sources jar being preferred to the binary jar and the other
+     * classifiers being ignored. The timestamped files of a snapshot are keyed with its SNAPSHOT version.
+     */
+    private void addRepositoryFiles(ScanIndex.Folder artifactFolder, ScanIndex.Folder versionFolder, File parentFolder)
+    {
+    	String artifactId = artifactFolder.getName();
+    	String version = versionFolder.getName();
+    	String groupPath = artifactFolder.getParentPath();
+    	String keyFolder = groupPath == null ? "" : groupPath;
+    	String keyName = (artifactId + "-" + version).toLowerCase();
+    	// a snapshot deployed several times keeps the files of each build, only the last build is extracted
+    	String lastBuild = null;
+    	for (ScanIndex.FileEntry file : versionFolder.files)
+    	{
+    		String build = RepositoryLayout.getSnapshotBuild(artifactId, version, file.name);
+    		if (build != null && (lastBuild == null || RepositoryLayout.compareSnapshotBuilds(build, lastBuild) > 0))
+    			lastBuild = build;
+    	}
+    	for (ScanIndex.FileEntry file : versionFolder.files)
+    	{
+    		String build = RepositoryLayout.getSnapshotBuild(artifactId, version, file.name);
+    		if (build != null && !build.equals(lastBuild))
+    			continue;
+    		File f = new File(parentFolder, file.name);
+    		String type = RepositoryLayout.getArtifactType(artifactId, version, file.name);
+    		if ("sources.jar".equals(type))
+    			artifacts.put(ArtifactCatalogue.JAR, keyFolder, keyName, f);
+    		else if ("jar".equals(type))
     		{
-    			String key = getKey(filename, "ear");
-    			if (key != null)
-    				earFiles.put(fileRelativePath + key, f);
+    			int key = artifacts.getKey(keyFolder, keyName);
+    			if (key < 0 || !artifacts.has(key, ArtifactCatalogue.JAR))
+    				artifacts.put(ArtifactCatalogue.JAR, keyFolder, keyName, f);
     		}
-    		else if (filename.endsWith(".war"))
+    		else if ("dar".equals(type))
+    			artifacts.put(ArtifactCatalogue.DAR, keyFolder, keyName, f);
+    		else if ("ear".equals(type))
+    			artifacts.put(ArtifactCatalogue.EAR, keyFolder, keyName, f);
+    		else if ("war".equals(type))
+    			artifacts.put(ArtifactCatalogue.WAR, keyFolder, keyName, f);
+    		else if ("pom".equals(type))
+    			artifacts.put(ArtifactCatalogue.POM, keyFolder, keyName, f);
+    	}
+    }
+
+    private void addFile(String keyFolder, File f)
+    {
+    	String filename = f.getName().toLowerCase();
+    	if (filename.endsWith(".jar"))
+    	{
+			// specific jar filename KrankenAntragMDBEJB-1.0.39-sources.jar
+    		String key = filename;
+			if (key.contains("ejb-"))
+				key = key.replace("ejb-", "-");
+    		int pos = 0;
+    		if (key.contains("-sources.jar"))
+    			pos = key.length() - "-sources.jar".length();
+    		else
+    			pos = key.length() - ".jar".length();
+    		
+    		if (pos > 0)
+    			artifacts.put(ArtifactCatalogue.JAR, keyFolder, key.substring(0, pos), f);
+    	}
+    	else if (filename.endsWith(".dar"))
+    	{
+    		String key = getKey(filename, "dar");
+    		if (key != null)
+    			artifacts.put(ArtifactCatalogue.DAR, keyFolder, key, f);
+    	}
+    	else if (filename.endsWith(".ear"))
+    	{
+    		String key = getKey(filename, "ear");
+    		if (key != null)
+    			artifacts.put(ArtifactCatalogue.EAR, keyFolder, key, f);
+    	}
+    	else if (filename.endsWith(".war"))
+    	{
+    		String key = getKey(filename, "war");
+    		if (key != null)
+    			artifacts.put(ArtifactCatalogue.WAR, keyFolder, key, f);
+    	}
+    	else if (filename.endsWith(".pom.xml"))
+    	{
+    		artifacts.put(ArtifactCatalogue.POM, keyFolder, filename.substring(0, filename.length() - 8), f);
+    	}
+    	else if (AssemblyReader.getAssemblyType(filename) != null && !(f instanceof AssemblyEntry))
+    	{
+    		// the archives of a build distribution are matched as if they were in its folder
+    		try
     		{
-    			String key = getKey(filename, "war");
-    			if (key != null)
-    				warFiles.put(fileRelativePath + key, f);
+    			List<AssemblyEntry> entries = scanIndex.getAssemblyEntries(f);
+    			Logging.info("cast.dmt.extractor.mavenbuild.assemblyListed", "FILE", f, "NBFILES", entries.size());
+    			for (AssemblyEntry entry : entries)
+    				addFile(keyFolder, entry);
     		}
-    		else if (filename.endsWith(".pom.xml"))
+    		catch (IOException e)
     		{
-    			pomFiles.put(fileRelativePath + filename.substring(0, filename.length() - 8), f);
+    			Logging.warn("cast.dmt.extractor.mavenbuild.assemblyNotReadable", "FILE", f);
     		}
     	}
-
     }
     @Override
     public void extract(List<? extends ISourceRoot> initialRoots, IRootFactory rootFactory, IConfiguration configuration)
@@ -169,140 +273,767 @@ public class MavenBuildExtractor extends AbstractBlankInitialRootExtractor
 
         File globalRootFile = new File(configuration.getURL());
 
+        MavenBuildSettings settings = MavenBuildSettings.load(configuration);
+        writeThrottle = new IoThrottle(settings.writeMBps * 1024 * 1024);
+        readThrottle = new IoThrottle(settings.readMBps * 1024 * 1024);
+        filesThrottle = new IoThrottle(settings.filesPerSecond);
+        budget = settings.createBudget();
+        contentFolder = root.getContentDirectoryFile();
+        assemblyReader = new AssemblyReader();
+        moduleRootFactory = settings.isModuleRoots() ? rootFactory : null;
+        indexBinaryJars = settings.isIndexBinaryJars();
+        moduleStatistics = settings.statisticsEnabled ? new HashMap<File, ModuleStatistics>() : null;
+        statistics = null;
+        moduleGraph = settings.graphEnabled ? new ModuleGraph() : null;
+        graphModule = null;
+
         // 1. identify the list of files to extract and the mode
-        getFiles(globalRootFile, null);
+        scanIndex = settings.getScanIndex(globalRootFile);
+        scanIndex.refresh(settings.getVersionPolicy());
+        Logging.info("cast.dmt.extractor.mavenbuild.scanIndexRefreshed", "LISTED", scanIndex.getNbListedFolders(),
+        	"FOLDERS", scanIndex.getFolders().size());
+        getFiles(globalRootFile, scanIndex, settings.getVersionPolicy());
+        nbArtifacts = artifacts.getNbArtifacts();
+        catalogueEstimatedBytes = artifacts.getEstimatedMemoryBytes();
+        shardManifest = settings.createShardManifest();
+        if (shardManifest != null)
+        	applyShard(globalRootFile);
+        startModules();
+        prefetcher = settings.createPrefetcher(getExtractionOrder(), readThrottle);
+        if (prefetcher != null)
+        	prefetcher.start();
     	
     	// 2. extract the dar files in the temp folder
-    	for (Map.Entry<String, File> entry : darFiles.entrySet()) {
-    	    String key = entry.getKey();
-    	    File value = entry.getValue();
+    	for (int key = 0; key < artifacts.getNbKeys(); key++) {
+    	    File value = artifacts.getFile(key, ArtifactCatalogue.DAR);
+    	    if (value == null)
+    	    	continue;
     	    
     	    File destinationFolder = root.getContentDirectoryFile();
-    	    int index = key.indexOf(":");
-    	    String keyName = key.substring(index + 1); 
-    	    if (index > 1)
+    	    String subFolders = artifacts.getKeyFolder(key);
+    	    String keyName = artifacts.getKeyName(key);
+    	    if (subFolders.length() > 1)
     	    {
-    	    	String subFolders = key.substring(0, index);
     	    	destinationFolder = new File(destinationFolder.getAbsolutePath(), subFolders);
     	    	destinationFolder.mkdirs();
     	    }
     	    
     		// 2.1 extract the dar
+    	    if (!startArchive(value, destinationFolder, keyName))
+    	    	break;
+    	    if (graphModule != null)
+    	    	graphModule.addArchive("dar", value.getName(), null);
     	    extractDarFile(keyName, value, destinationFolder);
+    	    boolean extracted = endArchive(value, destinationFolder, keyName);
     	    
     		// 2.2 extract the corresponding jar
-    		if (jarFiles.containsKey(key))
+    		if (artifacts.has(key, ArtifactCatalogue.JAR))
     		{
     			// extract
-    			Logging.info("cast.dmt.extractor.mavenbuild.jarMatchingDar", "JAR", key);
-    			extractJarFile(keyName, jarFiles.get(key), destinationFolder, false);
+    			File jarFile = artifacts.getFile(key, ArtifactCatalogue.JAR);
+    			if (extracted && startArchive(jarFile, destinationFolder, keyName))
+    			{
+    				Logging.info("cast.dmt.extractor.mavenbuild.jarMatchingDar", "JAR", artifacts.getKeyString(key));
+    				if (graphModule != null)
+    					graphModule.addMatchingJar(jarFile.getName(), value.getName());
+    				extractJarFile(keyName, jarFile, destinationFolder, false);
+    				endArchive(jarFile, destinationFolder, keyName);
+    			}
     			// remove
-    			jarFiles.remove(key);
+    			artifacts.remove(key, ArtifactCatalogue.JAR);
     		}
     		
     		// when the DAR is available, ignore EAR and WAR
-    		if (earFiles.containsKey(key))
-    			earFiles.remove(key);
-    		if (warFiles.containsKey(key))
-    			warFiles.remove(key);
+    		artifacts.remove(key, ArtifactCatalogue.EAR);
+    		artifacts.remove(key, ArtifactCatalogue.WAR);
+
+    		// 2.3 register the module
+    		completeModule(destinationFolder, keyName);
     	}
     	
     	// 3. extract the ear files in the temp folder
-    	for (Map.Entry<String, File> entry : earFiles.entrySet()) {
-    	    String key = entry.getKey();
-    	    File value = entry.getValue();
+    	for (int key = 0; key < artifacts.getNbKeys(); key++) {
+    	    File value = artifacts.getFile(key, ArtifactCatalogue.EAR);
+    	    if (value == null)
+    	    	continue;
     	    File destinationFolder = root.getContentDirectoryFile();
-    	    int index = key.indexOf(":");
-    	    String keyName = key.substring(index + 1); 
-    	    if (index > 1)
+    	    String subFolders = artifacts.getKeyFolder(key);
+    	    String keyName = artifacts.getKeyName(key);
+    	    if (subFolders.length() > 1)
     	    {
-    	    	String subFolders = key.substring(0, index);
     	    	destinationFolder = new File(destinationFolder.getAbsolutePath(), subFolders);
     	    	destinationFolder.mkdirs();
     	    }
     		// 3.1 extract the ear
+    	    if (!startArchive(value, destinationFolder, keyName))
+    	    	break;
+    	    if (graphModule != null)
+    	    	graphModule.addArchive("ear", value.getName(), null);
     	    extractEarFile(keyName, value, destinationFolder);
+    	    boolean extracted = endArchive(value, destinationFolder, keyName);
     	    
     		// 3.2 extract the corresponding jar
-    		if (jarFiles.containsKey(key))
+    		if (artifacts.has(key, ArtifactCatalogue.JAR))
     		{
     			// extract
-    			Logging.info("cast.dmt.extractor.mavenbuild.jarMatchingEar", "JAR", key);
-    			extractJarFile(keyName, jarFiles.get(key), destinationFolder, false);
+    			File jarFile = artifacts.getFile(key, ArtifactCatalogue.JAR);
+    			if (extracted && startArchive(jarFile, destinationFolder, keyName))
+    			{
+    				Logging.info("cast.dmt.extractor.mavenbuild.jarMatchingEar", "JAR", artifacts.getKeyString(key));
+    				if (graphModule != null)
+    					graphModule.addMatchingJar(jarFile.getName(), value.getName());
+    				extractJarFile(keyName, jarFile, destinationFolder, false);
+    				endArchive(jarFile, destinationFolder, keyName);
+    			}
     			// remove
-    			jarFiles.remove(key);
+    			artifacts.remove(key, ArtifactCatalogue.JAR);
     		}
     		
     		// when the EAR is available, ignore WAR
-    		if (warFiles.containsKey(key))
-    			warFiles.remove(key);
+    		artifacts.remove(key, ArtifactCatalogue.WAR);
+
+    		// 3.3 register the module
+    		completeModule(destinationFolder, keyName);
     	}
 
     	// 4. extract the war files in the temp folder
-    	for (Map.Entry<String, File> entry : warFiles.entrySet()) {
-    	    String key = entry.getKey();
-    	    File value = entry.getValue();
+    	for (int key = 0; key < artifacts.getNbKeys(); key++) {
+    	    File value = artifacts.getFile(key, ArtifactCatalogue.WAR);
+    	    if (value == null)
+    	    	continue;
     	    File destinationFolder = root.getContentDirectoryFile();
-    	    int index = key.indexOf(":");
-    	    String keyName = key.substring(index + 1); 
-    	    if (index > 1)
+    	    String subFolders = artifacts.getKeyFolder(key);
+    	    String keyName = artifacts.getKeyName(key);
+    	    if (subFolders.length() > 1)
     	    {
-    	    	String subFolders = key.substring(0, index);
     	    	destinationFolder = new File(destinationFolder.getAbsolutePath(), subFolders);
     	    	destinationFolder.mkdirs();
     	    }
     		// 4.1 extract the war
+    	    if (!startArchive(value, destinationFolder, keyName))
+    	    	break;
+    	    if (graphModule != null)
+    	    	graphModule.addArchive("war", value.getName(), null);
     	    extractWarFile(keyName, value, destinationFolder);
+    	    boolean extracted = endArchive(value, destinationFolder, keyName);
     	    
     		// 4.2 extract the corresponding jar
-    		if (jarFiles.containsKey(key))
+    		if (artifacts.has(key, ArtifactCatalogue.JAR))
     		{
     			// extract
-    			Logging.info("cast.dmt.extractor.mavenbuild.jarMatchingWar", "JAR", key);
-    			extractJarFile(keyName, jarFiles.get(key), destinationFolder, false);
+    			File jarFile = artifacts.getFile(key, ArtifactCatalogue.JAR);
+    			if (extracted && startArchive(jarFile, destinationFolder, keyName))
+    			{
+    				Logging.info("cast.dmt.extractor.mavenbuild.jarMatchingWar", "JAR", artifacts.getKeyString(key));
+    				if (graphModule != null)
+    					graphModule.addMatchingJar(jarFile.getName(), value.getName());
+    				extractJarFile(keyName, jarFile, destinationFolder, false);
+    				endArchive(jarFile, destinationFolder, keyName);
+    			}
     			// remove
-    			jarFiles.remove(key);
+    			artifacts.remove(key, ArtifactCatalogue.JAR);
     		}
+
+    		// 4.3 register the module
+    		completeModule(destinationFolder, keyName);
     	}
 
     	// 5. extract the jar files in the temp folder
-    	for (Map.Entry<String, File> entry : jarFiles.entrySet()) {
-    	    String key = entry.getKey();
-    	    File value = entry.getValue();
+    	for (int key = 0; key < artifacts.getNbKeys(); key++) {
+    	    File value = artifacts.getFile(key, ArtifactCatalogue.JAR);
+    	    if (value == null)
+    	    	continue;
     	    File destinationFolder = root.getContentDirectoryFile();
-    	    int index = key.indexOf(":");
-    	    String keyName = key.substring(index + 1); 
-    	    if (index > 1)
+    	    String subFolders = artifacts.getKeyFolder(key);
+    	    String keyName = artifacts.getKeyName(key);
+    	    if (subFolders.length() > 1)
     	    {
-    	    	String subFolders = key.substring(0, index);
     	    	destinationFolder = new File(destinationFolder.getAbsolutePath(), subFolders);
     	    	destinationFolder.mkdirs();
     	    }
     	    
     		// 5.1 extract the jar
-			Logging.info("cast.dmt.extractor.mavenbuild.jarAlone", "JAR", key);
+    	    if (!startArchive(value, destinationFolder, keyName))
+    	    	break;
+			Logging.info("cast.dmt.extractor.mavenbuild.jarAlone", "JAR", artifacts.getKeyString(key));
+			if (graphModule != null)
+				graphModule.addArchive("jar", value.getName(), null);
 			extractJarFile(keyName, value, destinationFolder, true);
+			boolean extracted = endArchive(value, destinationFolder, keyName);
 
 			// 5.2 find the pom
-			if (pomFiles.containsKey(key))
+			if (extracted && artifacts.has(key, ArtifactCatalogue.POM))
 			{
-				Logging.info("cast.dmt.extractor.mavenbuild.pomMatchingJar", "JAR", key);
-				File pomFile = pomFiles.get(key);
+				Logging.info("cast.dmt.extractor.mavenbuild.pomMatchingJar", "JAR", artifacts.getKeyString(key));
+				File pomFile = artifacts.getFile(key, ArtifactCatalogue.POM);
 				// move
     			String destinationName = null;
 				try {
 					destinationName = FileHelper.getPortablePath(destinationFolder.getCanonicalPath() + "/" + keyName.substring(0, keyName.lastIndexOf("-"))) + "/pom.xml";
 	    			//File destinationFile = new File(destinationName);
 					//pomFile.renameTo(destinationFile);
-	    			FileHelper.safeCopyFile(null, pomFile.getCanonicalPath(), destinationName);
+	    			if (pomFile instanceof AssemblyEntry)
+	    				copyAssemblyEntry((AssemblyEntry) pomFile, destinationName);
+	    			else
+	    				FileHelper.safeCopyFile(null, pomFile.getCanonicalPath(), destinationName);
 				} catch (IOException e) {
 					// NOP
 				}
 			}
-    	}    	
+
+			// 5.3 register the module
+			completeModule(destinationFolder, keyName);
+    	}
+    	// the modules left by an exceeded run budget
+    	for (File moduleFolder : new ArrayList<File>(pendingModules.keySet()))
+    		registerModuleRoot(moduleFolder);
+
+    	assemblyReader.close();
+    	if (prefetcher != null)
+    	{
+    		prefetcher.close();
+    		Logging.info("cast.dmt.extractor.mavenbuild.prefetchSummary", "HITS", prefetcher.getHits(), "LATE",
+    			prefetcher.getLateHits(), "MISSES", prefetcher.getMisses(), "STALL", prefetcher.getStallMillis(),
+    			"MB", prefetcher.getPrefetchedBytes() / (1024 * 1024));
+    	}
+    	if (moduleStatistics != null)
+    	{
+    		File summaryFile = settings.getStatisticsFile(globalRootFile);
+    		try
+    		{
+    			int nbModules = ModuleStatistics.write(moduleStatistics.values(), summaryFile);
+    			Logging.info("cast.dmt.extractor.mavenbuild.moduleStatisticsWritten", "FILE", summaryFile, "NBMODULES",
+    				nbModules);
+    		}
+    		catch (IOException e)
+    		{
+    			Logging.managedError(e, "cast.dmt.extractor.mavenbuild.moduleStatisticsFailure", "FILE", summaryFile);
+    		}
+    	}
+    	if (moduleGraph != null)
+    		writeModuleGraph(settings, globalRootFile);
+    	if (shardManifest != null)
+    	{
+    		shardManifest.complete = budget.getRunExceededReason() == null;
+    		File manifestFile = shardManifest.getFile(settings.getShardManifestFolder(contentFolder));
+    		try
+    		{
+    			shardManifest.write(manifestFile);
+    			Logging.info("cast.dmt.extractor.mavenbuild.shardManifestWritten", "FILE", manifestFile, "NBKEYS",
+    				shardManifest.archives.size(), "PLAN", shardManifest.planSize);
+    		}
+    		catch (IOException e)
+    		{
+    			Logging.managedError(e, "cast.dmt.extractor.mavenbuild.shardManifestFailure", "FILE", manifestFile);
+    		}
+    	}
+    	if (writeThrottle.isEnabled() || readThrottle.isEnabled() || filesThrottle.isEnabled())
+    		Logging.info("cast.dmt.extractor.mavenbuild.throttlingSummary", "WRITE", writeThrottle.getThrottledMillis(),
+    			"READ", readThrottle.getThrottledMillis(), "FILES", filesThrottle.getThrottledMillis(),
+    			"NBFILES", filesThrottle.getAcquired());
     }
 
-    private static void extractWarFile(String key, File warFile, File destinationFolder)
+    /**
+     * @return the prefetcher of the last extraction, null when the archives were not read ahead
+     */
+    ArchivePrefetcher getPrefetcher()
+    {
+    	return prefetcher;
+    }
+
+    /**
+     * @return the number of archives and poms matched by the last extraction
+     */
+    int getNbArtifacts()
+    {
+    	return nbArtifacts;
+    }
+
+    /**
+     * @return the estimated heap used by the catalogue of the matched archives and poms, not a measure
+     */
+    long getCatalogueEstimatedBytes()
+    {
+    	return catalogueEstimatedBytes;
+    }
+
+    /**
+     * @return the path of a file of the content directory, relative to the content directory and '/' separated
+     */
+    private String getContentPath(File file) throws IOException
+    {
+    	String contentPath = FileHelper.getPortablePath(contentFolder.getCanonicalPath());
+    	String path = FileHelper.getPortablePath(file.getCanonicalPath());
+    	if (path.startsWith(contentPath))
+    		path = path.substring(contentPath.length());
+    	while (path.startsWith("/"))
+    		path = path.substring(1);
+    	return path;
+    }
+
+    /**
+     * @return true when the extraction processes the key, each key being extracted by one iteration of the extraction
+     *         loops
+     */
+    private boolean isExtractedKey(int key)
+    {
+    	return artifacts.has(key, ArtifactCatalogue.DAR) || artifacts.has(key, ArtifactCatalogue.EAR)
+    		|| artifacts.has(key, ArtifactCatalogue.WAR) || artifacts.has(key, ArtifactCatalogue.JAR);
+    }
+
+    /**
+     * Keeps the keys of the shard of the process and records the archives they extract, the DAR taking precedence over
+     * the EAR and the EAR over the WAR, as in the extraction loops.
+     */
+    private void applyShard(File rootFolder)
+    {
+    	List<String> keys = new ArrayList<String>();
+    	for (int key = 0; key < artifacts.getNbKeys(); key++)
+    		if (isExtractedKey(key))
+    			keys.add(artifacts.getKeyString(key));
+    	shardManifest.setPlan(keys);
+    	String rootPath = FileHelper.getPortablePath(rootFolder.getAbsolutePath());
+    	for (int key = 0; key < artifacts.getNbKeys(); key++)
+    	{
+    		if (!isExtractedKey(key))
+    			continue;
+    		String keyString = artifacts.getKeyString(key);
+    		if (!shardManifest.isInShard(keyString))
+    		{
+    			artifacts.removeKey(key);
+    			continue;
+    		}
+    		File container = artifacts.getFile(key, ArtifactCatalogue.DAR);
+    		if (container == null)
+    			container = artifacts.getFile(key, ArtifactCatalogue.EAR);
+    		if (container == null)
+    			container = artifacts.getFile(key, ArtifactCatalogue.WAR);
+    		List<File> archives = new ArrayList<File>();
+    		if (container != null)
+    			archives.add(container);
+    		if (artifacts.has(key, ArtifactCatalogue.JAR))
+    			archives.add(artifacts.getFile(key, ArtifactCatalogue.JAR));
+    		if (container == null && artifacts.has(key, ArtifactCatalogue.POM))
+    			archives.add(artifacts.getFile(key, ArtifactCatalogue.POM));
+    		for (File archive : archives)
+    		{
+    			String path = FileHelper.getPortablePath(archive.getAbsolutePath());
+    			if (path.startsWith(rootPath))
+    				path = path.substring(rootPath.length() + 1);
+    			shardManifest.addArchive(keyString, path);
+    		}
+    	}
+    }
+
+    /**
+     * Writes the module graph and, when it is enabled and the modules stay in the content directory, the reactor pom
+     * aggregating them.
+     */
+    private void writeModuleGraph(MavenBuildSettings settings, File rootFolder)
+    {
+    	File graphFile = settings.getGraphFile(rootFolder);
+    	try
+    	{
+    		moduleGraph.write(graphFile);
+    		Logging.info("cast.dmt.extractor.mavenbuild.moduleGraphWritten", "FILE", graphFile, "NBMODULES",
+    			moduleGraph.size(), "NBDEPENDENCIES", moduleGraph.getDependencies().size());
+    	}
+    	catch (IOException e)
+    	{
+    		Logging.managedError(e, "cast.dmt.extractor.mavenbuild.moduleGraphFailure", "FILE", graphFile);
+    	}
+    	if (!settings.graphReactorPom || moduleRootFactory != null)
+    		return;
+    	File reactorPom = new File(contentFolder, ModuleGraph.REACTOR_POM);
+    	if (reactorPom.exists())
+    	{
+    		Logging.warn("cast.dmt.extractor.mavenbuild.reactorPomNotWritten", "FILE", reactorPom);
+    		return;
+    	}
+    	try
+    	{
+    		moduleGraph.writeReactorPom(reactorPom, contentFolder.getName());
+    	}
+    	catch (IOException e)
+    	{
+    		Logging.managedError(e, "cast.dmt.extractor.mavenbuild.moduleGraphFailure", "FILE", reactorPom);
+    	}
+    }
+
+    /**
+     * @return the archives of the drop folder in the order the extraction opens them: the containers of each type with
+     *         their matching jar, then the jars alone. The archives of the build distributions are left out, they are
+     *         streamed from their distribution.
+     */
+    private List<File> getExtractionOrder()
+    {
+    	Set<File> archives = new LinkedHashSet<File>();
+    	int[] types = { ArtifactCatalogue.DAR, ArtifactCatalogue.EAR, ArtifactCatalogue.WAR, ArtifactCatalogue.JAR };
+    	for (int i = 0; i < types.length; i++)
+    	{
+    		for (int key = 0; key < artifacts.getNbKeys(); key++)
+    		{
+    			// a key is extracted by the loop of its first type, with its matching jar
+    			boolean extractedBefore = false;
+    			for (int j = 0; j < i; j++)
+    				extractedBefore |= artifacts.has(key, types[j]);
+    			if (extractedBefore || !artifacts.has(key, types[i]))
+    				continue;
+    			File container = artifacts.getFile(key, types[i]);
+    			if (!(container instanceof AssemblyEntry))
+    				archives.add(container);
+    			File jarFile = artifacts.getFile(key, ArtifactCatalogue.JAR);
+    			if (jarFile != null && !(jarFile instanceof AssemblyEntry))
+    				archives.add(jarFile);
+    		}
+    	}
+    	return new ArrayList<File>(archives);
+    }
+
+    /**
+     * Counts the keys extracted in each module folder, so that a module is registered once all of them are extracted.
+     */
+    private void startModules()
+    {
+    	pendingModules = new HashMap<File, Integer>();
+    	if (moduleRootFactory == null)
+    		return;
+    	for (int key = 0; key < artifacts.getNbKeys(); key++)
+    	{
+    		if (!isExtractedKey(key))
+    			continue;
+    		String subFolders = artifacts.getKeyFolder(key);
+    		File destinationFolder = contentFolder;
+    		if (subFolders.length() > 1)
+    			destinationFolder = new File(contentFolder.getAbsolutePath(), subFolders);
+    		File moduleFolder = getModuleFolder(destinationFolder, artifacts.getKeyName(key));
+    		Integer pending = pendingModules.get(moduleFolder);
+    		pendingModules.put(moduleFolder, pending == null ? 1 : pending + 1);
+    	}
+    }
+
+    /**
+     * Registers the module of a key as a source root when the last key extracted in its folder is done.
+     */
+    private void completeModule(File destinationFolder, String keyName)
+    {
+    	File moduleFolder = getModuleFolder(destinationFolder, keyName);
+    	if (statistics != null)
+    	{
+    		// the module pom is final once its key is extracted, and must be measured before the module is moved
+    		try
+    		{
+    			statistics.measurePom(new File(moduleFolder, "pom.xml"));
+    		}
+    		catch (IOException e)
+    		{
+    			// NOP
+    		}
+    		statistics = null;
+    	}
+    	if (graphModule != null)
+    	{
+    		graphModule.addKey(keyName);
+    		try
+    		{
+    			graphModule.readCoordinates(new File(moduleFolder, "pom.xml"));
+    		}
+    		catch (IOException e)
+    		{
+    			// NOP
+    		}
+    		graphModule = null;
+    	}
+    	if (moduleRootFactory == null)
+    		return;
+    	Integer pending = pendingModules.get(moduleFolder);
+    	if (pending != null && pending > 1)
+    	{
+    		pendingModules.put(moduleFolder, pending - 1);
+    		return;
+    	}
+    	registerModuleRoot(moduleFolder);
+    }
+
+    /**
+     * Registers an extracted module as its own source root, so that it can be processed while the extraction goes on.
+     * When the root factory gives the new root its own content directory, the module is moved there.
+     */
+    private void registerModuleRoot(File moduleFolder)
+    {
+    	pendingModules.remove(moduleFolder);
+    	if (moduleFolder.equals(contentFolder) || !moduleFolder.isDirectory())
+    		return;
+    	String path = null;
+    	try
+    	{
+    		path = getContentPath(moduleFolder);
+    		ISourceRoot moduleRoot = moduleRootFactory.createSourceRoot(path);
+    		if (moduleRoot == null)
+    		{
+    			Logging.warn("cast.dmt.extractor.mavenbuild.moduleRootNotCreated", "MODULE", path);
+    			return;
+    		}
+    		File moduleContentFolder = moduleRoot.getContentDirectoryFile();
+    		if (moduleContentFolder != null
+    			&& !moduleContentFolder.getCanonicalFile().equals(moduleFolder.getCanonicalFile()))
+    		{
+    			moveFolder(moduleFolder, moduleContentFolder);
+    			// remove the sub folders emptied by the move
+    			File parentFolder = moduleFolder.getAbsoluteFile().getParentFile();
+    			while (parentFolder != null && !parentFolder.equals(contentFolder.getAbsoluteFile()) && parentFolder.delete())
+    				parentFolder = parentFolder.getParentFile();
+    		}
+    		Logging.info("cast.dmt.extractor.mavenbuild.moduleRootRegistered", "MODULE", path);
+    	}
+    	catch (LogException e)
+    	{
+    		Logging.managedError(e, "cast.dmt.extractor.mavenbuild.moduleRootFailure", "MODULE", moduleFolder);
+    	}
+    	catch (IOException e)
+    	{
+    		Logging.managedError(e, "cast.dmt.extractor.mavenbuild.moduleRootFailure", "MODULE", moduleFolder);
+    	}
+    }
+
+    private static void moveFolder(File folder, File destinationFolder) throws IOException
+    {
+    	destinationFolder.mkdirs();
+    	File[] files = folder.listFiles();
+    	if (files != null)
+    	{
+	    	for (File f : files)
+	    	{
+	    		File destinationFile = new File(destinationFolder, f.getName());
+	    		if (f.isDirectory())
+	    			moveFolder(f, destinationFile);
+	    		else if (!f.renameTo(destinationFile))
+	    		{
+	    			FileHelper.safeCopyFile(null, f.getCanonicalPath(), destinationFile.getCanonicalPath());
+	    			f.delete();
+	    		}
+	    	}
+    	}
+    	folder.delete();
+    }
+
+    private void enterArchive() throws IOException
+    {
+    	if (budget != null)
+    		budget.enterArchive();
+    }
+
+    private void leaveArchive()
+    {
+    	if (budget != null)
+    		budget.leaveArchive();
+    }
+
+    /**
+     * Starts the budget and the statistics of an archive of the delivery.
+     *
+     * @return false when the run budget is exceeded and the archive must not be extracted
+     */
+    private boolean startArchive(File archive, File destinationFolder, String keyName)
+    {
+    	String reason = budget.getRunExceededReason();
+    	if (reason != null)
+    	{
+    		Logging.warn("cast.dmt.extractor.mavenbuild.runOverBudget", "FILE", archive, "REASON", reason);
+    		return false;
+    	}
+    	budget.startArchive(archive);
+    	statistics = getModuleStatistics(destinationFolder, keyName);
+    	if (statistics != null)
+    		statistics.checkpoint();
+    	if (moduleGraph != null)
+    	{
+    		graphModule = getGraphModule(destinationFolder, keyName);
+    		if (graphModule != null)
+    			graphModule.checkpoint();
+    	}
+    	return true;
+    }
+
+    /**
+     * @return the module graph node of the given key, null when its path cannot be resolved
+     */
+    private ModuleGraph.Module getGraphModule(File destinationFolder, String keyName)
+    {
+    	File moduleFolder = getModuleFolder(destinationFolder, keyName);
+    	try
+    	{
+    		return moduleGraph.getModule(moduleFolder, getContentPath(moduleFolder));
+    	}
+    	catch (IOException e)
+    	{
+    		return null;
+    	}
+    }
+
+    /**
+     * @return the statistics of the module of the given key, null when they are not computed
+     */
+    private ModuleStatistics getModuleStatistics(File destinationFolder, String keyName)
+    {
+    	if (moduleStatistics == null)
+    		return null;
+    	File moduleFolder = getModuleFolder(destinationFolder, keyName);
+    	ModuleStatistics module = moduleStatistics.get(moduleFolder);
+    	if (module == null)
+    	{
+    		try
+    		{
+    			module = new ModuleStatistics(getContentPath(moduleFolder),
+    				FileHelper.getPortablePath(moduleFolder.getCanonicalPath()));
+    		}
+    		catch (IOException e)
+    		{
+    			return null;
+    		}
+    		moduleStatistics.put(moduleFolder, module);
+    	}
+    	return module;
+    }
+
+    /**
+     * Ends the budget of an archive of the delivery. When the archive exceeded its budget, its partial output is removed.
+     *
+     * @return false when the archive exceeded its budget
+     */
+    private boolean endArchive(File archive, File destinationFolder, String keyName)
+    {
+    	String reason = budget.getExceededReason();
+    	if (reason == null)
+    		return true;
+    	budget.removeArchiveOutput(destinationFolder);
+    	if (statistics != null)
+    		statistics.rollback();
+    	if (graphModule != null)
+    		graphModule.rollback();
+    	File moduleFolder = getModuleFolder(destinationFolder, keyName);
+    	if (!moduleFolder.equals(destinationFolder))
+    		removeEmptyFolders(moduleFolder);
+    	Logging.warn("cast.dmt.extractor.mavenbuild.archiveOverBudget", "FILE", archive, "REASON", reason);
+    	return false;
+    }
+
+    /**
+     * @return the folder where the module of the given key is extracted
+     */
+    private static File getModuleFolder(File destinationFolder, String keyName)
+    {
+    	int pos = keyName.lastIndexOf("-");
+    	if (pos < 0)
+    		return destinationFolder;
+    	return new File(destinationFolder, keyName.substring(0, pos));
+    }
+
+    private static void removeEmptyFolders(File folder)
+    {
+    	File[] files = folder.listFiles();
+    	if (files == null)
+    		return;
+    	for (File f : files)
+    		if (f.isDirectory())
+    			removeEmptyFolders(f);
+    	folder.delete();
+    }
+
+    /**
+     * Copies a pom of a build distribution to the content directory.
+     */
+    private void copyAssemblyEntry(AssemblyEntry entry, String destinationName) throws IOException
+    {
+    	new File(destinationName).getParentFile().mkdirs();
+    	InputStream inputStream = openArchive(entry);
+    	try
+    	{
+    		OutputStream outputStream = createOutputFile(destinationName);
+    		try
+    		{
+    			byte[] buf = new byte[8192];
+    			int n;
+    			while ((n = inputStream.read(buf)) > -1)
+    				outputStream.write(buf, 0, n);
+    		}
+    		finally
+    		{
+    			outputStream.close();
+    		}
+    	}
+    	finally
+    	{
+    		inputStream.close();
+    	}
+    }
+
+    /**
+     * Opens an archive for reading, the read bandwidth being limited when a read throttle is configured. The archives of
+     * a build distribution are streamed from the distribution, and the archives read ahead in the staging folder are
+     * read from there, without throttle.
+     */
+    private InputStream openArchive(File archive) throws IOException
+    {
+    	InputStream inputStream;
+    	if (archive instanceof AssemblyEntry)
+    		inputStream = assemblyReader.open((AssemblyEntry) archive);
+    	else if (prefetcher != null)
+    		inputStream = prefetcher.open(archive);
+    	else
+    		inputStream = new FileInputStream(archive.getCanonicalPath());
+    	boolean staged = inputStream instanceof ArchivePrefetcher.StagedInputStream;
+    	if (budget != null)
+    		inputStream = new BudgetedInputStream(inputStream, budget);
+    	if (readThrottle != null && readThrottle.isEnabled() && !staged)
+    		inputStream = new ThrottledInputStream(inputStream, readThrottle);
+    	return inputStream;
+    }
+
+    /**
+     * Creates an extracted file, the file creation rate and the write bandwidth being limited when throttles are
+     * configured.
+     */
+    private OutputStream createOutputFile(String path) throws IOException
+    {
+    	return createOutputFile(path, true);
+    }
+
+    /**
+     * @param counted
+     *            false for the nested archives written to be extracted then removed, which are neither in the module
+     *            statistics nor entries of the budget, their bytes being charged until
+     *            {@link #deleteTemporaryFile(File)}
+     */
+    private OutputStream createOutputFile(String path, boolean counted) throws IOException
+    {
+    	if (filesThrottle != null)
+    		filesThrottle.acquire(1);
+    	if (budget != null && counted)
+    		budget.onFileCreated(new File(path));
+    	else if (budget != null)
+    		budget.onTemporaryFileCreated(new File(path));
+    	OutputStream outputStream = new FileOutputStream(path);
+    	if (counted && statistics != null && !statistics.isPom(path))
+    		outputStream = new StatisticsOutputStream(outputStream, statistics, path);
+    	if (budget != null)
+    		outputStream = new BudgetedOutputStream(outputStream, budget, new File(path));
+    	if (writeThrottle != null && writeThrottle.isEnabled())
+    		outputStream = new ThrottledOutputStream(outputStream, writeThrottle);
+    	return outputStream;
+    }
+
+    /**
+     * Removes a nested archive copy once extracted, releasing its charge to the budget.
+     */
+    private void deleteTemporaryFile(File file)
+    {
+    	file.delete();
+    	if (budget != null)
+    		budget.onTemporaryFileDeleted(file);
+    }
+
+    private void extractWarFile(String key, File warFile, File destinationFolder)
     {
 		Logging.info("cast.dmt.extractor.mavenbuild.extractingWarFile", "WAR", key);
 		String pomFilePath = null;
@@ -310,6 +1041,7 @@ public class MavenBuildExtractor extends AbstractBlankInitialRootExtractor
 
         try
         {
+            enterArchive();
             String destinationName = FileHelper.getPortablePath(destinationFolder.getCanonicalPath());
             destinationName += "/" + key.substring(0, key.lastIndexOf("-"));
             pomFilePath = destinationName + "/pom.xml";
@@ -317,7 +1049,7 @@ public class MavenBuildExtractor extends AbstractBlankInitialRootExtractor
             byte[] buf = new byte[1024];
             ZipInputStream zipinputstream = null;
             ZipEntry zipentry;
-            zipinputstream = new ZipInputStream(new FileInputStream(warFile.getCanonicalPath()));
+            zipinputstream = new ZipInputStream(openArchive(warFile));
  
             zipentry = zipinputstream.getNextEntry();
             while (zipentry != null) 
@@ -334,24 +1066,26 @@ public class MavenBuildExtractor extends AbstractBlankInitialRootExtractor
                 	continue;
                 }
                 if (entryName.endsWith(".jar"))
-                	jarFiles.add(entryName);
-                 
+                    jarFiles.add(entryName);
+
                 int n;
-                FileOutputStream fileoutputstream;
+                OutputStream fileoutputstream;
                 if (entryName.endsWith("pom.xml"))
-	                fileoutputstream = new FileOutputStream(pomFilePath);             
+                    fileoutputstream = createOutputFile(pomFilePath);
                 else
-	                fileoutputstream = new FileOutputStream(destinationName + entryName);             
-	 
+                    fileoutputstream = createOutputFile(destinationName + entryName);
+
                 while ((n = zipinputstream.read(buf, 0, 1024)) > -1)
                     fileoutputstream.write(buf, 0, n);
- 
-                fileoutputstream.close(); 
+
+                fileoutputstream.close();
                 zipinputstream.closeEntry();
                 zipentry = zipinputstream.getNextEntry();
             }
  
             zipinputstream.close();
+            if (graphModule != null)
+            	graphModule.addLibraries(warFile.getName(), jarFiles);
             
             File pomFile = new File(pomFilePath);
             if (pomFile.exists())
@@ -361,9 +1095,13 @@ public class MavenBuildExtractor extends AbstractBlankInitialRootExtractor
         {
             //e.printStackTrace();
         }
+        finally
+        {
+            leaveArchive();
+        }
     }
 
-    private static void transformPom(String pomFilePath, List<String> jarFiles)
+    private void transformPom(String pomFilePath, List<String> jarFiles)
     {
     	//String pomContent = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>";
     	BufferedReader reader = null;
@@ -709,7 +1447,7 @@ public class MavenBuildExtractor extends AbstractBlankInitialRootExtractor
         	pomFile.delete();
 
     		//bwr = new BufferedWriter(new FileWriter(new File(pomFilePath)));
-    		bwr = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(pomFilePath), Charset.forName("UTF-8")));
+    		bwr = new BufferedWriter(new OutputStreamWriter(createOutputFile(pomFilePath), Charset.forName("UTF-8")));
     		bwr.write(sbf.toString());
 			bwr.flush();
     		bwr.close();
@@ -745,12 +1483,13 @@ public class MavenBuildExtractor extends AbstractBlankInitialRootExtractor
         }
     }
     
-    private static void extractEarFile(String key, File earFile, File destinationFolder)
+    private void extractEarFile(String key, File earFile, File destinationFolder)
     {
 		Logging.info("cast.dmt.extractor.mavenbuild.extractingEarFile", "EAR", key);
 
         try
         {
+            enterArchive();
             String destinationName = FileHelper.getPortablePath(destinationFolder.getCanonicalPath());
             destinationName += "/" + key.substring(0, key.lastIndexOf("-")) + "/";
             File fld = new File(destinationName);
@@ -759,7 +1498,7 @@ public class MavenBuildExtractor extends AbstractBlankInitialRootExtractor
             byte[] buf = new byte[1024];
             ZipInputStream zipinputstream = null;
             ZipEntry zipentry;
-            zipinputstream = new ZipInputStream(new FileInputStream(earFile.getCanonicalPath()));
+            zipinputstream = new ZipInputStream(openArchive(earFile));
  
             zipentry = zipinputstream.getNextEntry();
             while (zipentry != null) 
@@ -774,11 +1513,11 @@ public class MavenBuildExtractor extends AbstractBlankInitialRootExtractor
                 }
                  
                 int n;
-                FileOutputStream fileoutputstream;
+                OutputStream fileoutputstream;
                 String filename = entryName.substring(entryName.lastIndexOf("/") + 1);
             	File parentFolder = new File(destinationName + filename).getParentFile();
             	parentFolder.mkdirs();
-                fileoutputstream = new FileOutputStream(destinationName + filename);             
+                fileoutputstream = createOutputFile(destinationName + filename, false);
  
                 while ((n = zipinputstream.read(buf, 0, 1024)) > -1)
                     fileoutputstream.write(buf, 0, n);
@@ -787,8 +1526,10 @@ public class MavenBuildExtractor extends AbstractBlankInitialRootExtractor
                 zipinputstream.closeEntry();
                 
                 File warFile = new File(destinationName + filename);
+                if (graphModule != null)
+                	graphModule.addArchive("war", filename, earFile.getName());
                 extractWarFile(key, warFile, destinationFolder);
-                warFile.delete();
+                deleteTemporaryFile(warFile);
                 
                 zipentry = zipinputstream.getNextEntry();
  
@@ -800,20 +1541,25 @@ public class MavenBuildExtractor extends AbstractBlankInitialRootExtractor
         {
             //e.printStackTrace();
         }
+        finally
+        {
+            leaveArchive();
+        }
     }
 
-    private static void extractEarFileFromDar(String key, File earFile, File destinationFolder)
+    private void extractEarFileFromDar(String key, File earFile, File destinationFolder)
     {
 		Logging.info("cast.dmt.extractor.mavenbuild.extractingEarFile", "EAR", key);
 
         try
         {
+            enterArchive();
             String destinationName = FileHelper.getPortablePath(destinationFolder.getCanonicalPath());
             destinationName += "/" + key.substring(0, key.lastIndexOf("-")) + "/";
             byte[] buf = new byte[1024];
             ZipInputStream zipinputstream = null;
             ZipEntry zipentry;
-            zipinputstream = new ZipInputStream(new FileInputStream(earFile.getCanonicalPath()));
+            zipinputstream = new ZipInputStream(openArchive(earFile));
  
             zipentry = zipinputstream.getNextEntry();
             while (zipentry != null) 
@@ -828,10 +1574,10 @@ public class MavenBuildExtractor extends AbstractBlankInitialRootExtractor
                 }
                  
                 int n;
-                FileOutputStream fileoutputstream;
+                OutputStream fileoutputstream;
             	File parentFolder = new File(destinationName + entryName).getParentFile();
             	parentFolder.mkdirs();
-                fileoutputstream = new FileOutputStream(destinationName + entryName);             
+                fileoutputstream = createOutputFile(destinationName + entryName, false);
  
                 while ((n = zipinputstream.read(buf, 0, 1024)) > -1)
                     fileoutputstream.write(buf, 0, n);
@@ -840,8 +1586,10 @@ public class MavenBuildExtractor extends AbstractBlankInitialRootExtractor
                 zipinputstream.closeEntry();
                 
                 File warFile = new File(destinationName + entryName);
+                if (graphModule != null)
+                	graphModule.addArchive("war", warFile.getName(), earFile.getName());
                 extractWarFile(key, warFile, destinationFolder);
-                warFile.delete();
+                deleteTemporaryFile(warFile);
                 
                 zipentry = zipinputstream.getNextEntry();
  
@@ -853,14 +1601,19 @@ public class MavenBuildExtractor extends AbstractBlankInitialRootExtractor
         {
             //e.printStackTrace();
         }
+        finally
+        {
+            leaveArchive();
+        }
     }
     
-    private static void extractDarFile(String key, File darFile, File destinationFolder)
+    private void extractDarFile(String key, File darFile, File destinationFolder)
     {
 		Logging.info("cast.dmt.extractor.mavenbuild.extractingDarFile", "DAR", key);
 
         try
         {
+            enterArchive();
             String destinationName = FileHelper.getPortablePath(destinationFolder.getCanonicalPath());
             destinationName += "/" + key.substring(0, key.lastIndexOf("-")) + "/";
             File fld = new File(destinationName);
@@ -869,7 +1622,7 @@ public class MavenBuildExtractor extends AbstractBlankInitialRootExtractor
             byte[] buf = new byte[1024];
             ZipInputStream zipinputstream = null;
             ZipEntry zipentry;
-            zipinputstream = new ZipInputStream(new FileInputStream(darFile.getCanonicalPath()));
+            zipinputstream = new ZipInputStream(openArchive(darFile));
  
             zipentry = zipinputstream.getNextEntry();
             while (zipentry != null) 
@@ -884,11 +1637,11 @@ public class MavenBuildExtractor extends AbstractBlankInitialRootExtractor
                 }
                  
                 int n;
-                FileOutputStream fileoutputstream;
+                OutputStream fileoutputstream;
                 String filename = entryName.substring(entryName.lastIndexOf("/") + 1);
             	File parentFolder = new File(destinationName + filename).getParentFile();
             	parentFolder.mkdirs();
-                fileoutputstream = new FileOutputStream(destinationName + filename);             
+                fileoutputstream = createOutputFile(destinationName + filename, false);
  
                 while ((n = zipinputstream.read(buf, 0, 1024)) > -1)
                     fileoutputstream.write(buf, 0, n);
@@ -897,8 +1650,10 @@ public class MavenBuildExtractor extends AbstractBlankInitialRootExtractor
                 zipinputstream.closeEntry();
                 
                 File earFile = new File(destinationName + filename);
+                if (graphModule != null)
+                	graphModule.addArchive("ear", filename, darFile.getName());
                 extractEarFileFromDar(key, earFile, destinationFolder);
-                earFile.delete();
+                deleteTemporaryFile(earFile);
                 
                 zipentry = zipinputstream.getNextEntry();
  
@@ -910,6 +1665,10 @@ public class MavenBuildExtractor extends AbstractBlankInitialRootExtractor
         {
             //e.printStackTrace();
         }
+        finally
+        {
+            leaveArchive();
+        }
     }
     
     private static String readFile(String file) throws IOException {
@@ -930,20 +1689,26 @@ public class MavenBuildExtractor extends AbstractBlankInitialRootExtractor
         }
     }    
     
-    private static void extractJarFile(String key, File jarFile, File destinationFolder, Boolean jarAlone)
+    private void extractJarFile(String key, File jarFile, File destinationFolder, Boolean jarAlone)
     {
         try
         {
+            enterArchive();
             String destinationName = FileHelper.getPortablePath(destinationFolder.getCanonicalPath());
             destinationName += "/" + key.substring(0, key.lastIndexOf("-"));
             String pomFilePath = destinationName + "/pom.xml";
+            String classIndexPath = destinationName + "/" + ClassIndex.FILENAME;
             destinationName +=  "/src/main/java/";
+            // the classes of a jar without sources are indexed instead of being extracted
+            ClassIndex classIndex = null;
+            if (indexBinaryJars && !jarFile.getName().toLowerCase().endsWith("-sources.jar"))
+            	classIndex = new ClassIndex();
             // remove the version
             //destinationName += "/" + key.substring(0, key.lastIndexOf("-")) + "/src/main/java/";
             byte[] buf = new byte[1024];
             ZipInputStream zipinputstream = null;
             ZipEntry zipentry;
-            zipinputstream = new ZipInputStream(new FileInputStream(jarFile.getCanonicalPath()));
+            zipinputstream = new ZipInputStream(openArchive(jarFile));
  
             zipentry = zipinputstream.getNextEntry();
             while (zipentry != null) 
@@ -952,6 +1717,14 @@ public class MavenBuildExtractor extends AbstractBlankInitialRootExtractor
                 String entryName = zipentry.getName();
                 //System.out.println("entryname "+entryName);
 
+                if (classIndex != null && (entryName.endsWith("/") || entryName.endsWith(".class")))
+                {
+                	if (entryName.endsWith(".class"))
+                		classIndex.add(zipinputstream);
+                	zipinputstream.closeEntry();
+                	zipentry = zipinputstream.getNextEntry();
+                	continue;
+                }
                 if (entryName.endsWith("/"))
                 {
                     File newFile = new File(destinationName + entryName);
@@ -960,24 +1733,24 @@ public class MavenBuildExtractor extends AbstractBlankInitialRootExtractor
                 	continue;
                 }
                 int n;
-                FileOutputStream fileoutputstream;
+                OutputStream fileoutputstream;
                 if (entryName.endsWith("pom.xml"))
                 {
-                	File parentFolder = new File(pomFilePath).getParentFile();
-                	parentFolder.mkdirs();
-	                fileoutputstream = new FileOutputStream(pomFilePath);             
+                    File parentFolder = new File(pomFilePath).getParentFile();
+                    parentFolder.mkdirs();
+                    fileoutputstream = createOutputFile(pomFilePath);
                 }
-	            else
+                else
                 {
-                	File parentFolder = new File(destinationName + entryName).getParentFile();
-                	parentFolder.mkdirs();
-	                fileoutputstream = new FileOutputStream(destinationName + entryName);             
+                    File parentFolder = new File(destinationName + entryName).getParentFile();
+                    parentFolder.mkdirs();
+                    fileoutputstream = createOutputFile(destinationName + entryName);
                 }
-                
+
                 while ((n = zipinputstream.read(buf, 0, 1024)) > -1)
                     fileoutputstream.write(buf, 0, n);
- 
-                fileoutputstream.close(); 
+
+                fileoutputstream.close();
                 zipinputstream.closeEntry();
                 zipentry = zipinputstream.getNextEntry();
  
@@ -985,6 +1758,21 @@ public class MavenBuildExtractor extends AbstractBlankInitialRootExtractor
  
             zipinputstream.close();
 
+            if (classIndex != null && classIndex.size() > 0)
+            {
+            	new File(classIndexPath).getParentFile().mkdirs();
+            	OutputStream fileoutputstream = createOutputFile(classIndexPath);
+            	try
+            	{
+            		classIndex.write(fileoutputstream);
+            	}
+            	finally
+            	{
+            		fileoutputstream.close();
+            	}
+            	Logging.info("cast.dmt.extractor.mavenbuild.classIndexWritten", "JAR", key, "NBCLASSES", classIndex.size());
+            }
+
             if (jarAlone)
             {
 	            File pomFile = new File(pomFilePath);
@@ -994,9 +1782,17 @@ public class MavenBuildExtractor extends AbstractBlankInitialRootExtractor
 	            	Logging.warn("cast.dmt.extractor.mavenbuild.noPomInJar", "JAR", key);
             }
         }
+        catch (ArchiveBudget.ExceededException e)
+        {
+        	Logging.warn("cast.dmt.extractor.mavenbuild.jarExtractionStopped", "JAR", key, "REASON", e.getReason());
+        }
         catch (Exception e)
         {
             e.printStackTrace();
         }
+        finally
+        {
+            leaveArchive();
+        }
     }
 }
@@ -0,0 +1,297 @@
+package com.castsoftware.dmt.extractor.mavenbuild;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The {@link MavenBuildSettings} class holds the tuning parameters of an extraction run. <BR>
+ * The parameters of a delivery are read from the extractor configuration (the parameters of the extractor model, the
+ * symbol of throttle.writeMBps being throttleWriteMBps). Each parameter can be overridden by the Java system property
+ * prefixed by {@value #PREFIX} (-Dcast.dmt.extractor.mavenbuild.throttle.writeMBps=20 for instance), which is also the
+ * only way to set the parameters of the machine (index, shard and prefetch folders for instance).
+ */
+class MavenBuildSettings
+{
+    static final String PREFIX = "cast.dmt.extractor.mavenbuild.";
+
+    /** The parameters declared in the extractor model */
+    private static final Set<String> MODEL_PARAMETERS = new HashSet<String>(Arrays.asList("throttle.writeMBps",
+        "throttle.readMBps", "throttle.filesPerSecond", "archive.maxMB", "archive.maxEntries", "archive.maxRatio",
+        "archive.maxDepth", "archive.maxSeconds", "run.maxMB", "run.maxEntries", "run.maxSeconds", "layout",
+        "repository.version", "roots", "binaryJars", "statistics.enabled", "graph.enabled",
+        "graph.reactorPom"));
+
+    private final MavenBuildExtractor.IConfiguration configuration;
+
+    /** Maximum write bandwidth in MB/s, 0 for unlimited */
+    double writeMBps;
+    /** Maximum read bandwidth in MB/s, 0 for unlimited */
+    double readMBps;
+    /** Maximum number of files created per second, 0 for unlimited */
+    double filesPerSecond;
+
+    /** Maximum uncompressed MB written for one archive, 0 for unlimited */
+    double archiveMaxMB;
+    /** Maximum number of files written for one archive, 0 for unlimited */
+    long archiveMaxEntries;
+    /** Maximum ratio between the bytes written for one archive and its size, 0 for unlimited */
+    double archiveMaxRatio;
+    /** Maximum nesting depth of the archives (DAR, EAR, WAR is 3), 0 for unlimited */
+    int archiveMaxDepth;
+    /** Maximum extraction time of one archive in seconds, 0 for unlimited */
+    double archiveMaxSeconds;
+    /** Maximum uncompressed MB written for the run, 0 for unlimited */
+    double runMaxMB;
+    /** Maximum number of files written for the run, 0 for unlimited */
+    long runMaxEntries;
+    /** Maximum extraction time of the run in seconds, 0 for unlimited */
+    double runMaxSeconds;
+
+    /** Layout of the drop folder: auto to detect the Maven repository artifact folders, flat to ignore them */
+    String layout;
+    /** Version extracted from the artifact folders of a repository layout: release or latest */
+    String repositoryVersion;
+
+    /** Whether the scan index of the drop folder is saved between runs */
+    boolean indexEnabled;
+    /** Folder where the scan indexes are saved */
+    String indexFolder;
+
+    /** Source roots of the extraction: single for the initial root only, module to register a root per module */
+    String roots;
+
+    /** Classes of the jars without sources: extract to write the .class files, index to write a class index */
+    String binaryJars;
+
+    /** Number of processes sharing the extraction of the delivery, 1 for no sharding */
+    int shardCount;
+    /** Shard extracted by this process, from 0 to shardCount - 1 */
+    int shardIndex;
+    /** Folder where the shard manifests are written, the content directory when empty */
+    String shardManifestFolder;
+
+    /** Whether the per-module statistics are computed while the files are written */
+    boolean statisticsEnabled;
+    /** Folder where the module statistics summary is written, the index folder when empty */
+    String statisticsFolder;
+
+    /** Number of archives read ahead of the one being extracted, 0 for no read-ahead */
+    int prefetchCount;
+    /** Folder where the archives read ahead are copied, empty to only warm the page cache */
+    String prefetchStagingFolder;
+    /** Maximum MB of archives copied in the staging folder */
+    double prefetchStagingMB;
+
+    /** Whether the module graph is written at the end of the run */
+    boolean graphEnabled;
+    /** Whether the reactor pom of the modules is written in the content directory with the module graph */
+    boolean graphReactorPom;
+
+    private MavenBuildSettings(MavenBuildExtractor.IConfiguration configuration)
+    {
+        this.configuration = configuration;
+    }
+
+    /**
+     * @return the extraction budget of the current run
+     */
+    ArchiveBudget createBudget()
+    {
+        return new ArchiveBudget((long) (archiveMaxMB * 1024 * 1024), archiveMaxEntries, archiveMaxRatio,
+            archiveMaxDepth, (long) (archiveMaxSeconds * 1000), (long) (runMaxMB * 1024 * 1024), runMaxEntries,
+            (long) (runMaxSeconds * 1000));
+    }
+
+    /**
+     * @return the version selection policy of the artifact folders of a repository layout, null for a flat layout
+     */
+    String getVersionPolicy()
+    {
+        if ("flat".equalsIgnoreCase(layout))
+            return null;
+        return RepositoryLayout.LATEST.equalsIgnoreCase(repositoryVersion) ? RepositoryLayout.LATEST
+            : RepositoryLayout.RELEASE;
+    }
+
+    /**
+     * @return the scan index of the drop folder
+     */
+    ScanIndex getScanIndex(File rootFolder)
+    {
+        return ScanIndex.get(rootFolder, indexEnabled ? new File(indexFolder) : null);
+    }
+
+    /**
+     * @return true when each extracted module is registered as its own source root
+     */
+    boolean isModuleRoots()
+    {
+        return "module".equalsIgnoreCase(roots);
+    }
+
+    /**
+     * @return true when the classes of the jars without sources are indexed instead of being extracted
+     */
+    boolean isIndexBinaryJars()
+    {
+        return "index".equalsIgnoreCase(binaryJars);
+    }
+
+    /**
+     * @return the manifest of the shard extracted by this process, null when the extraction is not sharded
+     */
+    ShardManifest createShardManifest()
+    {
+        if (shardCount <= 1)
+            return null;
+        if (shardIndex < 0 || shardIndex >= shardCount)
+            throw new IllegalArgumentException("Invalid shard " + shardIndex + " of " + shardCount);
+        return new ShardManifest(shardCount, shardIndex);
+    }
+
+    /**
+     * @return the folder where the shard manifests are written
+     */
+    File getShardManifestFolder(File contentFolder)
+    {
+        return shardManifestFolder.isEmpty() ? contentFolder : new File(shardManifestFolder);
+    }
+
+    /**
+     * @return the JSON summary of the module statistics, out of the content directory: in the statistics folder, or
+     *         next to the scan index of the drop folder with a name of its own
+     */
+    File getStatisticsFile(File rootFolder)
+    {
+        if (!statisticsFolder.isEmpty())
+            return new File(statisticsFolder, ModuleStatistics.FILENAME);
+        return new File(indexFolder, "module-statistics-" + ScanIndex.getDeliveryId(rootFolder) + ".json");
+    }
+
+    /**
+     * @return the JSON module graph, out of the content directory, next to the module statistics
+     */
+    File getGraphFile(File rootFolder)
+    {
+        if (!statisticsFolder.isEmpty())
+            return new File(statisticsFolder, ModuleGraph.FILENAME);
+        return new File(indexFolder, "module-graph-" + ScanIndex.getDeliveryId(rootFolder) + ".json");
+    }
+
+    /**
+     * @return the prefetcher reading ahead the archives in the extraction order, null when there is no read-ahead
+     */
+    ArchivePrefetcher createPrefetcher(List<File> archives, IoThrottle readThrottle)
+    {
+        if (prefetchCount <= 0 || archives.isEmpty())
+            return null;
+        return new ArchivePrefetcher(archives, prefetchCount,
+            prefetchStagingFolder.isEmpty() ? null : new File(prefetchStagingFolder),
+            (long) (prefetchStagingMB * 1024 * 1024), readThrottle);
+    }
+
+    /**
+     * @param configuration
+     *            the configuration of the delivery, null to only read the system properties
+     * @return the settings of the current run
+     */
+    static MavenBuildSettings load(MavenBuildExtractor.IConfiguration configuration)
+    {
+        MavenBuildSettings settings = new MavenBuildSettings(configuration);
+        settings.writeMBps = settings.getDouble("throttle.writeMBps", 0);
+        settings.readMBps = settings.getDouble("throttle.readMBps", 0);
+        settings.filesPerSecond = settings.getDouble("throttle.filesPerSecond", 0);
+        settings.archiveMaxMB = settings.getDouble("archive.maxMB", 0);
+        settings.archiveMaxEntries = (long) settings.getDouble("archive.maxEntries", 0);
+        settings.archiveMaxRatio = settings.getDouble("archive.maxRatio", 0);
+        settings.archiveMaxDepth = (int) settings.getDouble("archive.maxDepth", 0);
+        settings.archiveMaxSeconds = settings.getDouble("archive.maxSeconds", 0);
+        settings.runMaxMB = settings.getDouble("run.maxMB", 0);
+        settings.runMaxEntries = (long) settings.getDouble("run.maxEntries", 0);
+        settings.runMaxSeconds = settings.getDouble("run.maxSeconds", 0);
+        settings.layout = settings.getString("layout", "auto");
+        settings.repositoryVersion = settings.getString("repository.version", RepositoryLayout.RELEASE);
+        settings.indexEnabled = settings.getBoolean("index.enabled", false);
+        settings.indexFolder = settings.getString("index.folder", new File(System.getProperty("java.io.tmpdir"),
+            "dmtmavenbuildextractor").getPath());
+        settings.roots = settings.getString("roots", "single");
+        settings.binaryJars = settings.getString("binaryJars", "extract");
+        settings.shardCount = (int) settings.getDouble("shard.count", 1);
+        settings.shardIndex = (int) settings.getDouble("shard.index", 0);
+        settings.shardManifestFolder = settings.getString("shard.manifestFolder", "");
+        settings.statisticsEnabled = settings.getBoolean("statistics.enabled", false);
+        settings.statisticsFolder = settings.getString("statistics.folder", "");
+        settings.graphEnabled = settings.getBoolean("graph.enabled", false);
+        settings.graphReactorPom = settings.getBoolean("graph.reactorPom", false);
+        settings.prefetchCount = (int) settings.getDouble("prefetch.count", 0);
+        settings.prefetchStagingFolder = settings.getString("prefetch.stagingFolder", "");
+        settings.prefetchStagingMB = settings.getDouble("prefetch.stagingMB", 256);
+        return settings;
+    }
+
+    /**
+     * @return the value of a parameter, from the system properties first, then from the configuration
+     */
+    private String getValue(String name)
+    {
+        String value = System.getProperty(PREFIX + name);
+        if ((value == null || value.trim().isEmpty()) && configuration != null && MODEL_PARAMETERS.contains(name))
+            value = configuration.getParameterValue(getSymbol(name));
+        return value == null || value.trim().isEmpty() ? null : value.trim();
+    }
+
+    /**
+     * @return the symbol of a parameter in the extractor model: throttleWriteMBps for throttle.writeMBps
+     */
+    static String getSymbol(String name)
+    {
+        StringBuilder symbol = new StringBuilder(name.length());
+        boolean upper = false;
+        for (int i = 0; i < name.length(); i++)
+        {
+            char c = name.charAt(i);
+            if (c == '.')
+                upper = true;
+            else
+            {
+                symbol.append(upper ? Character.toUpperCase(c) : c);
+                upper = false;
+            }
+        }
+        return symbol.toString();
+    }
+
+    private double getDouble(String name, double defaultValue)
+    {
+        String value = getValue(name);
+        if (value == null)
+            return defaultValue;
+        try
+        {
+            return Double.parseDouble(value);
+        }
+        catch (NumberFormatException e)
+        {
+            return defaultValue;
+        }
+    }
+
+    private boolean getBoolean(String name, boolean defaultValue)
+    {
+        String value = getValue(name);
+        if (value == null)
+            return defaultValue;
+        return Boolean.parseBoolean(value);
+    }
+
+    private String getString(String name, String defaultValue)
+    {
+        String value = getValue(name);
+        if (value == null)
+            return defaultValue;
+        return value;
+    }
+}
@@ -0,0 +1,467 @@
+package com.castsoftware.dmt.extractor.mavenbuild;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The {@link ModuleGraph} class holds the modules of an extraction and their relationships, as found while extracting
+ * them: the archives each module is extracted from (a DAR, the EARs it contains, the WARs of these EARs, the matching
+ * jar), the WEB-INF/lib jars of its WARs, and its coordinates. <BR>
+ * At the end of the run, the libraries matching the coordinates of an extracted module become dependencies between
+ * modules, and the graph is written as JSON, with on demand a reactor pom aggregating the modules, so that the delivery
+ * can be loaded in one pass instead of parsing every module pom again.
+ */
+final class ModuleGraph
+{
+    static final String FILENAME = "module-graph.json";
+    static final String REACTOR_POM = "pom.xml";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * An archive a module is extracted from.
+     */
+    private static final class Archive
+    {
+        final String type;
+        final String name;
+        /** The archive containing it, null for an archive of the delivery */
+        final String container;
+        /** The container the jar matches, null for the other archives */
+        final String matches;
+
+        Archive(String type, String name, String container, String matches)
+        {
+            this.type = type;
+            this.name = name;
+            this.container = container;
+            this.matches = matches;
+        }
+    }
+
+    /**
+     * An extracted module.
+     */
+    final class Module
+    {
+        /** The module path, relative to the content directory */
+        final String path;
+        private final Set<String> keys = new LinkedHashSet<String>();
+        private final List<Archive> archives = new ArrayList<Archive>();
+        /** The WEB-INF/lib jars, as {war, jar path in the war} */
+        private final List<String[]> libraries = new ArrayList<String[]>();
+        private String groupId = null;
+        private String artifactId = null;
+        private String version = null;
+        private String packaging = null;
+        private boolean hasPom = false;
+        private int checkpointArchives = 0;
+        private int checkpointLibraries = 0;
+
+        Module(String path)
+        {
+            this.path = path;
+        }
+
+        void addKey(String keyName)
+        {
+            keys.add(keyName);
+        }
+
+        /**
+         * Adds an archive extracted in the module.
+         *
+         * @param container
+         *            the archive containing it, null for an archive of the delivery
+         */
+        void addArchive(String type, String name, String container)
+        {
+            archives.add(new Archive(type, name, container, null));
+        }
+
+        /**
+         * Adds the jar matching a container of the delivery.
+         */
+        void addMatchingJar(String name, String container)
+        {
+            archives.add(new Archive("jar", name, null, container));
+        }
+
+        void addLibraries(String war, List<String> jarPaths)
+        {
+            for (String jarPath : jarPaths)
+                libraries.add(new String[] { war, jarPath });
+        }
+
+        /**
+         * Records the module before an archive is extracted.
+         */
+        void checkpoint()
+        {
+            checkpointArchives = archives.size();
+            checkpointLibraries = libraries.size();
+        }
+
+        /**
+         * Forgets the archive extracted since the checkpoint, whose output has been removed.
+         */
+        void rollback()
+        {
+            while (archives.size() > checkpointArchives)
+                archives.remove(archives.size() - 1);
+            while (libraries.size() > checkpointLibraries)
+                libraries.remove(libraries.size() - 1);
+        }
+
+        /**
+         * Reads the coordinates of the module from its final pom. The groupId and version are inherited from the parent
+         * when the module does not declare them.
+         */
+        void readCoordinates(File pomFile) throws IOException
+        {
+            hasPom = pomFile.isFile();
+            if (!hasPom)
+                return;
+            // only the direct children of <project>: the versions of <properties>, <scm> or of the dependencies
+            // are not the one of the module
+            Map<String, String> project = getChildElements(readFile(pomFile));
+            artifactId = project.get("artifactId");
+            groupId = project.get("groupId");
+            version = project.get("version");
+            packaging = project.get("packaging");
+            String parentContent = project.get("parent");
+            if (parentContent == null)
+                return;
+            Map<String, String> parent = getChildElements("<parent>" + parentContent + "</parent>");
+            if (groupId == null)
+                groupId = parent.get("groupId");
+            if (version == null)
+                version = parent.get("version");
+        }
+
+        /**
+         * @return the names (artifactId-version, lower case) a library of a WAR matches the module with
+         */
+        private Set<String> getLibraryNames()
+        {
+            Set<String> names = new LinkedHashSet<String>(keys);
+            if (artifactId != null && version != null)
+                names.add((artifactId + "-" + version).toLowerCase());
+            return names;
+        }
+    }
+
+    private final Map<File, Module> modules = new HashMap<File, Module>();
+
+    /**
+     * @return the module extracted in a folder, created on the first call
+     */
+    Module getModule(File moduleFolder, String path)
+    {
+        Module module = modules.get(moduleFolder);
+        if (module == null)
+        {
+            module = new Module(path);
+            modules.put(moduleFolder, module);
+        }
+        return module;
+    }
+
+    /**
+     * @return the extracted modules, sorted by path
+     */
+    private List<Module> getModules()
+    {
+        Map<String, Module> sortedModules = new TreeMap<String, Module>();
+        for (Module module : modules.values())
+            if (!module.archives.isEmpty())
+                sortedModules.put(module.path, module);
+        return new ArrayList<Module>(sortedModules.values());
+    }
+
+    /**
+     * @return the dependencies between modules, as {from module, to module, library}: a WEB-INF/lib jar of a module
+     *         whose artifactId-version is the one of another extracted module
+     */
+    List<String[]> getDependencies()
+    {
+        Map<String, Module> modulesByName = new HashMap<String, Module>();
+        for (Module module : getModules())
+            for (String name : module.getLibraryNames())
+                if (!modulesByName.containsKey(name))
+                    modulesByName.put(name, module);
+
+        List<String[]> dependencies = new ArrayList<String[]>();
+        for (Module module : getModules())
+        {
+            for (String[] library : module.libraries)
+            {
+                String name = library[1].substring(library[1].lastIndexOf('/') + 1).toLowerCase();
+                if (name.endsWith(".jar"))
+                    name = name.substring(0, name.length() - 4);
+                Module target = modulesByName.get(name);
+                if (target != null && target != module)
+                    dependencies.add(new String[] { module.path, target.path, library[1] });
+            }
+        }
+        return dependencies;
+    }
+
+    /**
+     * @return the number of modules with archives extracted
+     */
+    int size()
+    {
+        return getModules().size();
+    }
+
+    /**
+     * Writes the module graph as JSON.
+     */
+    void write(File graphFile) throws IOException
+    {
+        graphFile.getAbsoluteFile().getParentFile().mkdirs();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(graphFile), UTF8);
+        try
+        {
+            writer.write("{\n  \"modules\": [");
+            String separator = "\n";
+            for (Module module : getModules())
+            {
+                writer.write(separator);
+                separator = ",\n";
+                writer.write("    {\n");
+                writer.write("      \"module\": " + quote(module.path) + ",\n");
+                writer.write("      \"groupId\": " + quote(module.groupId) + ",\n");
+                writer.write("      \"artifactId\": " + quote(module.artifactId) + ",\n");
+                writer.write("      \"version\": " + quote(module.version) + ",\n");
+                writer.write("      \"packaging\": " + quote(module.packaging) + ",\n");
+                writer.write("      \"pom\": " + module.hasPom + ",\n");
+                writer.write("      \"keys\": [");
+                String itemSeparator = "";
+                for (String key : module.keys)
+                {
+                    writer.write(itemSeparator + quote(key));
+                    itemSeparator = ", ";
+                }
+                writer.write("],\n      \"archives\": [");
+                itemSeparator = "\n";
+                for (Archive archive : module.archives)
+                {
+                    writer.write(itemSeparator + "        { \"type\": " + quote(archive.type) + ", \"name\": "
+                        + quote(archive.name));
+                    if (archive.container != null)
+                        writer.write(", \"container\": " + quote(archive.container));
+                    if (archive.matches != null)
+                        writer.write(", \"matches\": " + quote(archive.matches));
+                    writer.write(" }");
+                    itemSeparator = ",\n";
+                }
+                writer.write(module.archives.isEmpty() ? "],\n" : "\n      ],\n");
+                writer.write("      \"libraries\": [");
+                itemSeparator = "\n";
+                for (String[] library : module.libraries)
+                {
+                    writer.write(itemSeparator + "        { \"war\": " + quote(library[0]) + ", \"path\": "
+                        + quote(library[1]) + " }");
+                    itemSeparator = ",\n";
+                }
+                writer.write(module.libraries.isEmpty() ? "]\n" : "\n      ]\n");
+                writer.write("    }");
+            }
+            writer.write("\n  ],\n  \"dependencies\": [");
+            separator = "\n";
+            for (String[] dependency : getDependencies())
+            {
+                writer.write(separator + "    { \"from\": " + quote(dependency[0]) + ", \"to\": " + quote(dependency[1])
+                    + ", \"library\": " + quote(dependency[2]) + " }");
+                separator = ",\n";
+            }
+            writer.write("\n  ]\n}\n");
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+
+    /**
+     * Writes the reactor pom aggregating the modules that have a pom.
+     */
+    void writeReactorPom(File pomFile, String artifactId) throws IOException
+    {
+        StringBuilder sbf = new StringBuilder();
+        sbf.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+        sbf.append("\r\n");
+        sbf.append("<project xmlns=\"http://maven.apache.org/POM/4.0.0\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xsi:schemaLocation=\"http://maven.apache.org/POM/4.0.0 http://maven.apache.org/xsd/maven-4.0.0.xsd\">");
+        sbf.append("\r\n");
+        sbf.append("<modelVersion>4.0.0</modelVersion>");
+        sbf.append("\r\n");
+        sbf.append("<groupId>delivery</groupId>");
+        sbf.append("\r\n");
+        sbf.append("<artifactId>" + escape(artifactId) + "</artifactId>");
+        sbf.append("\r\n");
+        sbf.append("<packaging>pom</packaging>");
+        sbf.append("\r\n");
+        sbf.append("<version>1.0.0</version>");
+        sbf.append("\r\n");
+        sbf.append("<modules>");
+        sbf.append("\r\n");
+        for (Module module : getModules())
+        {
+            if (!module.hasPom || module.path.isEmpty())
+                continue;
+            sbf.append("<module>" + escape(module.path) + "</module>");
+            sbf.append("\r\n");
+        }
+        sbf.append("</modules>");
+        sbf.append("\r\n");
+        sbf.append("</project>");
+
+        Writer writer = new OutputStreamWriter(new FileOutputStream(pomFile), UTF8);
+        try
+        {
+            writer.write(sbf.toString());
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+
+    /**
+     * Scans an XML content, tracking the depth of the elements, for the direct children of its root element.
+     *
+     * @return the content of each child of the root element, trimmed, by local name; the first one when a name is
+     *         repeated
+     */
+    private static Map<String, String> getChildElements(String content)
+    {
+        Map<String, String> children = new HashMap<String, String>();
+        int depth = 0;
+        String childName = null;
+        int childStart = 0;
+        int pos = content.indexOf('<');
+        while (pos >= 0)
+        {
+            int end;
+            if (content.startsWith("<!--", pos))
+                end = skip(content, pos, "-->");
+            else if (content.startsWith("<![CDATA[", pos))
+                end = skip(content, pos, "]]>");
+            else if (content.startsWith("<?", pos) || content.startsWith("<!", pos))
+                end = skip(content, pos, ">");
+            else
+            {
+                end = skip(content, pos, ">");
+                if (end < 0)
+                    break;
+                String tag = content.substring(pos + 1, end - 1);
+                if (tag.startsWith("/"))
+                {
+                    if (depth == 2 && childName != null)
+                    {
+                        if (!children.containsKey(childName))
+                            children.put(childName, content.substring(childStart, pos).trim());
+                        childName = null;
+                    }
+                    depth--;
+                }
+                else if (tag.endsWith("/"))
+                {
+                    if (depth == 1 && !children.containsKey(getLocalName(tag)))
+                        children.put(getLocalName(tag), "");
+                }
+                else
+                {
+                    depth++;
+                    if (depth == 2)
+                    {
+                        childName = getLocalName(tag);
+                        childStart = end;
+                    }
+                }
+            }
+            if (end < 0)
+                break;
+            pos = content.indexOf('<', end);
+        }
+        return children;
+    }
+
+    /**
+     * @return the position after the terminator, -1 when the content ends before
+     */
+    private static int skip(String content, int pos, String terminator)
+    {
+        int end = content.indexOf(terminator, pos);
+        return end < 0 ? -1 : end + terminator.length();
+    }
+
+    /**
+     * @return the name of a start tag without its attributes and namespace prefix
+     */
+    private static String getLocalName(String tag)
+    {
+        int end = 0;
+        while (end < tag.length() && !Character.isWhitespace(tag.charAt(end)) && tag.charAt(end) != '/')
+            end++;
+        String name = tag.substring(0, end);
+        return name.substring(name.indexOf(':') + 1);
+    }
+
+    private static String readFile(File file) throws IOException
+    {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8));
+        try
+        {
+            StringBuilder sb = new StringBuilder();
+            char[] buf = new char[8192];
+            int n;
+            while ((n = reader.read(buf)) > 0)
+                sb.append(buf, 0, n);
+            return sb.toString();
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    private static String escape(String s)
+    {
+        return s.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+    private static String quote(String s)
+    {
+        if (s == null)
+            return "null";
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++)
+        {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\')
+                sb.append('\\').append(c);
+            else if (c < 0x20)
+                sb.append(String.format("\\u%04x", (int) c));
+            else
+                sb.append(c);
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -0,0 +1,306 @@
+package com.castsoftware.dmt.extractor.mavenbuild;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The {@link ModuleStatistics} class holds the sizing statistics of an extracted module: the number of files, bytes and
+ * lines by extension and its largest files. <BR>
+ * The statistics are computed by a {@link StatisticsOutputStream} while the files are written, so that the content
+ * directory does not have to be read again to size the delivery. The lines are only counted for the text files, a
+ * file containing a NUL byte being binary.
+ */
+final class ModuleStatistics
+{
+    static final String FILENAME = "module-statistics.json";
+
+    private static final int NB_LARGEST_FILES = 10;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * The statistics of an extension: files, bytes and lines.
+     */
+    private static final class Counts
+    {
+        long files;
+        long bytes;
+        long lines;
+
+        Counts copy()
+        {
+            Counts counts = new Counts();
+            counts.files = files;
+            counts.bytes = bytes;
+            counts.lines = lines;
+            return counts;
+        }
+    }
+
+    private static final class LargeFile
+    {
+        final String path;
+        final long bytes;
+
+        LargeFile(String path, long bytes)
+        {
+            this.path = path;
+            this.bytes = bytes;
+        }
+    }
+
+    /** The module path, relative to the content directory */
+    final String name;
+    /** The module folder, portable path of its canonical form, to which the file paths are made relative */
+    private final String folderPath;
+    private Map<String, Counts> extensions = new TreeMap<String, Counts>();
+    /** The largest files, by decreasing size */
+    private List<LargeFile> largestFiles = new ArrayList<LargeFile>();
+    /** The module pom, rewritten after its archives are extracted, is measured on its own */
+    private Counts pom = null;
+
+    /** The statistics before the current archive, restored when its output is removed */
+    private Map<String, Counts> checkpointExtensions = null;
+    private List<LargeFile> checkpointLargestFiles = null;
+
+    ModuleStatistics(String name, String folderPath)
+    {
+        this.name = name;
+        this.folderPath = folderPath;
+    }
+
+    /**
+     * @return true when the path is the module pom, which is measured by {@link #measurePom(File)}
+     */
+    boolean isPom(String path)
+    {
+        return path.equals(folderPath + "/pom.xml");
+    }
+
+    /**
+     * Adds a file written in the module.
+     *
+     * @param lines
+     *            the number of lines, -1 for a binary file
+     */
+    void addFile(String path, long bytes, long lines)
+    {
+        String relativePath = path.startsWith(folderPath + "/") ? path.substring(folderPath.length() + 1)
+            : path.substring(path.lastIndexOf('/') + 1);
+        Counts counts = getCounts(getExtension(relativePath));
+        counts.files++;
+        counts.bytes += bytes;
+        if (lines > 0)
+            counts.lines += lines;
+
+        if (largestFiles.size() == NB_LARGEST_FILES && bytes <= largestFiles.get(NB_LARGEST_FILES - 1).bytes)
+            return;
+        int index = largestFiles.size();
+        while (index > 0 && largestFiles.get(index - 1).bytes < bytes)
+            index--;
+        largestFiles.add(index, new LargeFile(relativePath, bytes));
+        if (largestFiles.size() > NB_LARGEST_FILES)
+            largestFiles.remove(NB_LARGEST_FILES);
+    }
+
+    /**
+     * Measures the module pom once it is final, replacing the previous measure.
+     */
+    void measurePom(File pomFile) throws IOException
+    {
+        if (!pomFile.isFile())
+            return;
+        pom = new Counts();
+        pom.files = 1;
+        InputStream inputStream = new FileInputStream(pomFile);
+        try
+        {
+            byte[] buf = new byte[8192];
+            int last = '\n';
+            int n;
+            while ((n = inputStream.read(buf)) > 0)
+            {
+                pom.bytes += n;
+                for (int i = 0; i < n; i++)
+                    if (buf[i] == '\n')
+                        pom.lines++;
+                last = buf[n - 1];
+            }
+            if (last != '\n')
+                pom.lines++;
+        }
+        finally
+        {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Records the statistics before an archive is extracted.
+     */
+    void checkpoint()
+    {
+        checkpointExtensions = new TreeMap<String, Counts>();
+        for (Map.Entry<String, Counts> entry : extensions.entrySet())
+            checkpointExtensions.put(entry.getKey(), entry.getValue().copy());
+        checkpointLargestFiles = new ArrayList<LargeFile>(largestFiles);
+    }
+
+    /**
+     * Restores the statistics recorded before the current archive, whose output has been removed.
+     */
+    void rollback()
+    {
+        if (checkpointExtensions == null)
+            return;
+        extensions = checkpointExtensions;
+        largestFiles = checkpointLargestFiles;
+        checkpointExtensions = null;
+        checkpointLargestFiles = null;
+    }
+
+    private Counts getCounts(String extension)
+    {
+        Counts counts = extensions.get(extension);
+        if (counts == null)
+        {
+            counts = new Counts();
+            extensions.put(extension, counts);
+        }
+        return counts;
+    }
+
+    private static String getExtension(String path)
+    {
+        String filename = path.substring(path.lastIndexOf('/') + 1);
+        int pos = filename.lastIndexOf('.');
+        return pos <= 0 ? "" : filename.substring(pos + 1).toLowerCase();
+    }
+
+    /**
+     * @return the statistics by extension, the module pom included
+     */
+    private Map<String, Counts> getExtensions()
+    {
+        if (pom == null)
+            return extensions;
+        Map<String, Counts> allExtensions = new TreeMap<String, Counts>();
+        for (Map.Entry<String, Counts> entry : extensions.entrySet())
+            allExtensions.put(entry.getKey(), entry.getValue().copy());
+        Counts counts = allExtensions.get("xml");
+        if (counts == null)
+        {
+            counts = new Counts();
+            allExtensions.put("xml", counts);
+        }
+        counts.files += pom.files;
+        counts.bytes += pom.bytes;
+        counts.lines += pom.lines;
+        return allExtensions;
+    }
+
+    /**
+     * Writes the statistics of the modules as a JSON summary, the modules being sorted by name. The modules without
+     * files, whose only archive has been removed, are left out.
+     *
+     * @return the number of modules written
+     */
+    static int write(Collection<ModuleStatistics> modules, File summaryFile) throws IOException
+    {
+        Map<String, ModuleStatistics> sortedModules = new TreeMap<String, ModuleStatistics>();
+        for (ModuleStatistics module : modules)
+            if (module.getNbFiles() > 0)
+                sortedModules.put(module.name, module);
+
+        summaryFile.getAbsoluteFile().getParentFile().mkdirs();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(summaryFile), UTF8);
+        try
+        {
+            writer.write("{\n  \"modules\": [");
+            String separator = "\n";
+            for (ModuleStatistics module : sortedModules.values())
+            {
+                writer.write(separator);
+                separator = ",\n";
+                module.write(writer);
+            }
+            writer.write("\n  ]\n}\n");
+        }
+        finally
+        {
+            writer.close();
+        }
+        return sortedModules.size();
+    }
+
+    private long getNbFiles()
+    {
+        long nbFiles = pom == null ? 0 : pom.files;
+        for (Counts counts : extensions.values())
+            nbFiles += counts.files;
+        return nbFiles;
+    }
+
+    private void write(Writer writer) throws IOException
+    {
+        Map<String, Counts> allExtensions = getExtensions();
+        Counts total = new Counts();
+        for (Counts counts : allExtensions.values())
+        {
+            total.files += counts.files;
+            total.bytes += counts.bytes;
+            total.lines += counts.lines;
+        }
+        writer.write("    {\n");
+        writer.write("      \"module\": " + quote(name) + ",\n");
+        writer.write("      \"files\": " + total.files + ",\n");
+        writer.write("      \"bytes\": " + total.bytes + ",\n");
+        writer.write("      \"lines\": " + total.lines + ",\n");
+        writer.write("      \"extensions\": {");
+        String separator = "\n";
+        for (Map.Entry<String, Counts> entry : allExtensions.entrySet())
+        {
+            Counts counts = entry.getValue();
+            writer.write(separator + "        " + quote(entry.getKey()) + ": { \"files\": " + counts.files
+                + ", \"bytes\": " + counts.bytes + ", \"lines\": " + counts.lines + " }");
+            separator = ",\n";
+        }
+        writer.write(allExtensions.isEmpty() ? "},\n" : "\n      },\n");
+        writer.write("      \"largestFiles\": [");
+        separator = "\n";
+        for (LargeFile largeFile : largestFiles)
+        {
+            writer.write(separator + "        { \"path\": " + quote(largeFile.path) + ", \"bytes\": " + largeFile.bytes
+                + " }");
+            separator = ",\n";
+        }
+        writer.write(largestFiles.isEmpty() ? "]\n" : "\n      ]\n");
+        writer.write("    }");
+    }
+
+    private static String quote(String s)
+    {
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++)
+        {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\')
+                sb.append('\\').append(c);
+            else if (c < 0x20)
+                sb.append(String.format("\\u%04x", (int) c));
+            else
+                sb.append(c);
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -0,0 +1,174 @@
+package com.castsoftware.dmt.extractor.mavenbuild;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The {@link PipelinedGzipInputStream} class decodes a gzip stream on a background thread: the compressed stream is read
+ * and inflated ahead, in chunks handed over through a bounded queue, while the caller thread parses and extracts the
+ * decoded content. The gzip decoding and the extraction of a large assembly thus run on two cores instead of one.
+ */
+final class PipelinedGzipInputStream extends InputStream
+{
+    private static final int CHUNK_SIZE = 256 * 1024;
+    /** Number of decoded chunks the decoder may be ahead of the reader */
+    private static final int QUEUE_SIZE = 8;
+    private static final byte[] END = new byte[0];
+
+    private final InputStream compressed;
+    private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<byte[]>(QUEUE_SIZE);
+    private final Thread decoder;
+    private volatile boolean closed = false;
+    private volatile Throwable failure = null;
+    private byte[] chunk = null;
+    private int pos = 0;
+    private boolean ended = false;
+
+    PipelinedGzipInputStream(InputStream compressed)
+    {
+        this.compressed = compressed;
+        decoder = new Thread(new Runnable()
+        {
+            public void run()
+            {
+                decode();
+            }
+        }, "MavenBuildExtractor-gzip");
+        decoder.setDaemon(true);
+        decoder.start();
+    }
+
+    private void decode()
+    {
+        byte[] buf = null;
+        int n = 0;
+        try
+        {
+            InputStream inputStream = new GZIPInputStream(new BufferedInputStream(compressed, CHUNK_SIZE), 64 * 1024);
+            while (!closed)
+            {
+                buf = new byte[CHUNK_SIZE];
+                n = 0;
+                int read;
+                while (n < buf.length && (read = inputStream.read(buf, n, buf.length - n)) > 0)
+                    n += read;
+                if (n > 0 && !put(n < buf.length ? Arrays.copyOf(buf, n) : buf))
+                    return;
+                if (n < buf.length)
+                    break;
+            }
+        }
+        catch (Throwable e)
+        {
+            // the content decoded before the failure is delivered first, the failure being rethrown by the reader,
+            // which would otherwise wait for the end forever
+            if (n > 0)
+                put(Arrays.copyOf(buf, n));
+            failure = e;
+        }
+        finally
+        {
+            put(END);
+        }
+    }
+
+    /**
+     * @return false when the stream has been closed by the reader
+     */
+    private boolean put(byte[] buf)
+    {
+        try
+        {
+            while (!closed)
+                if (queue.offer(buf, 100, TimeUnit.MILLISECONDS))
+                    return true;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    private boolean nextChunk() throws IOException
+    {
+        if (ended)
+            return false;
+        try
+        {
+            chunk = queue.take();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while decoding a gzip stream");
+        }
+        pos = 0;
+        if (chunk == END)
+        {
+            ended = true;
+            if (failure instanceof IOException)
+                throw (IOException) failure;
+            if (failure != null)
+            {
+                IOException e = new IOException("Failed to decode a gzip stream: " + failure);
+                e.initCause(failure);
+                throw e;
+            }
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        if ((chunk == null || pos == chunk.length) && !nextChunk())
+            return -1;
+        return chunk[pos++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        if (len == 0)
+            return 0;
+        if ((chunk == null || pos == chunk.length) && !nextChunk())
+            return -1;
+        int n = Math.min(len, chunk.length - pos);
+        System.arraycopy(chunk, pos, b, off, n);
+        pos += n;
+        return n;
+    }
+
+    @Override
+    public int available()
+    {
+        return chunk == null || ended ? 0 : chunk.length - pos;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (closed)
+            return;
+        closed = true;
+        queue.clear();
+        try
+        {
+            decoder.join();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        compressed.close();
+    }
+}
@@ -0,0 +1,264 @@
+package com.castsoftware.dmt.extractor.mavenbuild;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.castsoftware.util.logger.Logging;
+
+/**
+ * The {@link RepositoryLayout} class handles the drop folders mirrored from a Maven repository, where each artifact is
+ * stored as groupId/artifactId/version/artifactId-version[-classifier].extension next to a maven-metadata.xml file.
+ * <BR>
+ * The version to extract is selected from the maven-metadata.xml of the artifact folder, so that the other version
+ * folders are never visited, and the files of the selected version are keyed like the flat name-version files.
+ */
+final class RepositoryLayout
+{
+    static final String METADATA_FILENAME = "maven-metadata.xml";
+
+    /** The version selection policies */
+    static final String RELEASE = "release";
+    static final String LATEST = "latest";
+
+    private static final Pattern RELEASE_PATTERN = Pattern.compile("<release>\\s*([^<\\s]+)\\s*</release>");
+    private static final Pattern LATEST_PATTERN = Pattern.compile("<latest>\\s*([^<\\s]+)\\s*</latest>");
+    private static final Pattern VERSION_PATTERN = Pattern.compile("<version>\\s*([^<\\s]+)\\s*</version>");
+    private static final Pattern VERSIONING_PATTERN = Pattern.compile("<versioning>(.*)</versioning>", Pattern.DOTALL);
+    private static final String SNAPSHOT_SUFFIX = "-snapshot";
+    /** The timestamp and build number replacing SNAPSHOT in the files of a snapshot deployed to a remote repository */
+    private static final Pattern SNAPSHOT_BUILD_PATTERN = Pattern.compile("\\d{8}\\.\\d{6}-\\d+");
+
+    private RepositoryLayout()
+    {
+        // NOP
+    }
+
+    /**
+     * Reads the versions of an artifact from its maven-metadata.xml file.
+     *
+     * @return the release version and the latest version, each one being null when it is not known
+     */
+    static String[] readVersions(File metadataFile)
+    {
+        String release = null;
+        String latest = null;
+        try
+        {
+            String content = readMetadata(metadataFile);
+            Matcher versioning = VERSIONING_PATTERN.matcher(content);
+            if (versioning.find())
+            {
+                String versions = versioning.group(1);
+                Matcher matcher = RELEASE_PATTERN.matcher(versions);
+                if (matcher.find())
+                    release = matcher.group(1);
+                matcher = LATEST_PATTERN.matcher(versions);
+                if (matcher.find())
+                    latest = matcher.group(1);
+                // old metadata only lists the versions, the last one being the most recent
+                matcher = VERSION_PATTERN.matcher(versions);
+                String lastVersion = null;
+                while (matcher.find())
+                    lastVersion = matcher.group(1);
+                if (latest == null)
+                    latest = lastVersion;
+                if (release == null && lastVersion != null && !lastVersion.endsWith("-SNAPSHOT"))
+                    release = lastVersion;
+            }
+        }
+        catch (IOException e)
+        {
+            Logging.warn("cast.dmt.extractor.mavenbuild.invalidRepositoryMetadata", "FILE", metadataFile);
+        }
+        return new String[] { release, latest };
+    }
+
+    /**
+     * @return the version selected by the policy, falling back on the latest version when there is no release
+     */
+    static String selectVersion(String releaseVersion, String latestVersion, String policy)
+    {
+        if (LATEST.equals(policy) || releaseVersion == null)
+            return latestVersion;
+        return releaseVersion;
+    }
+
+    /**
+     * Selects the version folder to extract when the version selected from the maven-metadata.xml is not on disk.
+     *
+     * @param versions
+     *            the version folders of the artifact folder
+     * @param policy
+     *            the version selection policy, a release version being preferred to a snapshot for RELEASE
+     * @return the highest version, null when there is none
+     */
+    static String getHighestVersion(Collection<String> versions, String policy)
+    {
+        String highest = null;
+        for (String version : versions)
+        {
+            if (highest == null)
+                highest = version;
+            else if (RELEASE.equals(policy) && isSnapshot(highest) != isSnapshot(version))
+            {
+                if (isSnapshot(highest))
+                    highest = version;
+            }
+            else if (compareVersions(version, highest) > 0)
+                highest = version;
+        }
+        return highest;
+    }
+
+    private static boolean isSnapshot(String version)
+    {
+        return version.toLowerCase().endsWith(SNAPSHOT_SUFFIX);
+    }
+
+    /**
+     * Compares two versions part by part, the numeric parts being compared as numbers and a version with an additional
+     * qualifier (1.0-SNAPSHOT, 1.0-beta) being older than the version without it.
+     *
+     * @return a negative number, 0 or a positive number when the first version is older, the same or more recent than
+     *         the second one
+     */
+    static int compareVersions(String version1, String version2)
+    {
+        String[] parts1 = version1.split("[.-]");
+        String[] parts2 = version2.split("[.-]");
+        for (int i = 0; i < Math.min(parts1.length, parts2.length); i++)
+        {
+            int result;
+            if (isNumber(parts1[i]) && isNumber(parts2[i]))
+                result = new BigInteger(parts1[i]).compareTo(new BigInteger(parts2[i]));
+            else if (isNumber(parts1[i]))
+                result = 1;
+            else if (isNumber(parts2[i]))
+                result = -1;
+            else
+                result = parts1[i].compareToIgnoreCase(parts2[i]);
+            if (result != 0)
+                return result;
+        }
+        if (parts1.length == parts2.length)
+            return 0;
+        // 1.0.1 is more recent than 1.0, 1.0-beta is older
+        if (parts1.length > parts2.length)
+            return isNumber(parts1[parts2.length]) ? 1 : -1;
+        return isNumber(parts2[parts1.length]) ? -1 : 1;
+    }
+
+    private static boolean isNumber(String part)
+    {
+        if (part.isEmpty())
+            return false;
+        for (int i = 0; i < part.length(); i++)
+            if (!Character.isDigit(part.charAt(i)))
+                return false;
+        return true;
+    }
+
+    /**
+     * @return true when the name found in an artifact folder is not a version folder (metadata, checksums, ...)
+     */
+    static boolean isMetadataFile(String name)
+    {
+        String lowerName = name.toLowerCase();
+        return lowerName.startsWith("maven-metadata") || lowerName.startsWith("_")
+            || lowerName.endsWith(".properties") || lowerName.endsWith(".lastupdated");
+    }
+
+    /**
+     * Classifies a file of the selected version folder of an artifact.
+     *
+     * @param artifactId
+     *            the name of the artifact folder
+     * @param version
+     *            the name of the version folder
+     * @param filename
+     *            the name of the file
+     * @return the extension of the file (jar, dar, ear, war or pom), "sources.jar" for the sources jar, or null when the
+     *         file is a classified artifact or a checksum that is not extracted
+     */
+    static String getArtifactType(String artifactId, String version, String filename)
+    {
+        String prefix = (artifactId + "-" + version).toLowerCase();
+        String lowerName = filename.toLowerCase();
+        String suffix;
+        if (lowerName.startsWith(prefix))
+            suffix = lowerName.substring(prefix.length());
+        else
+        {
+            String build = getSnapshotBuild(artifactId, version, filename);
+            if (build == null)
+                return null;
+            suffix = lowerName.substring(prefix.length() - SNAPSHOT_SUFFIX.length() + 1 + build.length());
+        }
+        if (suffix.equals("-sources.jar"))
+            return "sources.jar";
+        if (suffix.equals(".jar") || suffix.equals(".dar") || suffix.equals(".ear") || suffix.equals(".war")
+            || suffix.equals(".pom"))
+            return suffix.substring(1);
+        return null;
+    }
+
+    /**
+     * @return the timestamp and build number of a file of a snapshot version folder (20240101.123456-1 for
+     *         foo-1.0-20240101.123456-1.jar in 1.0-SNAPSHOT), null when the file is not a timestamped snapshot
+     */
+    static String getSnapshotBuild(String artifactId, String version, String filename)
+    {
+        String lowerVersion = version.toLowerCase();
+        if (!lowerVersion.endsWith(SNAPSHOT_SUFFIX))
+            return null;
+        String prefix = (artifactId + "-" + lowerVersion.substring(0, lowerVersion.length() - SNAPSHOT_SUFFIX.length())
+            + "-").toLowerCase();
+        String lowerName = filename.toLowerCase();
+        if (!lowerName.startsWith(prefix))
+            return null;
+        Matcher matcher = SNAPSHOT_BUILD_PATTERN.matcher(lowerName);
+        matcher.region(prefix.length(), lowerName.length());
+        if (!matcher.lookingAt())
+            return null;
+        return matcher.group();
+    }
+
+    /**
+     * @return a negative number, 0 or a positive number when the first snapshot build is older, the same or more recent
+     *         than the second one
+     */
+    static int compareSnapshotBuilds(String build1, String build2)
+    {
+        int pos1 = build1.lastIndexOf('-');
+        int pos2 = build2.lastIndexOf('-');
+        int result = build1.substring(0, pos1).compareTo(build2.substring(0, pos2));
+        if (result != 0)
+            return result;
+        return Long.valueOf(build1.substring(pos1 + 1)).compareTo(Long.valueOf(build2.substring(pos2 + 1)));
+    }
+
+    private static String readMetadata(File metadataFile) throws IOException
+    {
+        Reader reader = new InputStreamReader(new FileInputStream(metadataFile), "UTF-8");
+        try
+        {
+            StringBuilder content = new StringBuilder();
+            char[] buf = new char[4096];
+            int n;
+            while ((n = reader.read(buf)) > 0)
+                content.append(buf, 0, n);
+            return content.toString();
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+}
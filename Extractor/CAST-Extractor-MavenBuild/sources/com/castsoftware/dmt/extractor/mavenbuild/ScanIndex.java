@@ -0,0 +1,576 @@
+package com.castsoftware.dmt.extractor.mavenbuild;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.castsoftware.util.logger.Logging;
+
+/**
+ * The {@link ScanIndex} class is the persisted scan of a drop folder: for each folder its modification time, its sub
+ * folders and the files the extraction is interested in (archives and poms) with their size and modification time.
+ * <BR>
+ * A refresh only lists again the folders whose modification time changed, or one of whose files of interest changed
+ * size or modification time, an archive overwritten in place leaving its folder unchanged: the other folders are taken
+ * from the index and only their sub folders are checked, so a warm run does not walk the whole tree. The index is shared by
+ * {@link MavenBuildExtractor#connect}, {@link MavenBuildExtractor#getChildren} and {@link MavenBuildExtractor#extract}
+ * through an in-memory instance per drop folder, and saved in the index folder between runs. The archives listed in
+ * the build distributions are kept too, so that a distribution is only decompressed again when its size or its
+ * modification time changed.
+ */
+final class ScanIndex
+{
+    private static final int FORMAT_VERSION = 5;
+    /** Maximum number of indexes kept in memory, the least recently used being dropped */
+    private static final int MAX_INSTANCES = 16;
+
+    /** The indexes in memory, by drop folder and index file */
+    private static final Map<String, ScanIndex> instances = new LinkedHashMap<String, ScanIndex>(16, 0.75f, true)
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ScanIndex> eldest)
+        {
+            return size() > MAX_INSTANCES;
+        }
+    };
+
+    /**
+     * A file of interest of a folder.
+     */
+    static final class FileEntry
+    {
+        final String name;
+        final long length;
+        final long lastModified;
+
+        FileEntry(String name, long length, long lastModified)
+        {
+            this.name = name;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+    }
+
+    /**
+     * A scanned folder.
+     */
+    static final class Folder
+    {
+        /** The path relative to the drop folder, empty for the drop folder itself */
+        final String relativePath;
+        final long lastModified;
+        final List<String> subFolders;
+        final List<FileEntry> files;
+        /** For the artifact folder of a repository layout, the modification time of its maven-metadata.xml, 0 otherwise */
+        final long metadataLastModified;
+        final String releaseVersion;
+        final String latestVersion;
+
+        Folder(String relativePath, long lastModified, List<String> subFolders, List<FileEntry> files,
+            long metadataLastModified, String releaseVersion, String latestVersion)
+        {
+            this.relativePath = relativePath;
+            this.lastModified = lastModified;
+            this.subFolders = subFolders;
+            this.files = files;
+            this.metadataLastModified = metadataLastModified;
+            this.releaseVersion = releaseVersion;
+            this.latestVersion = latestVersion;
+        }
+
+        /**
+         * @return true for the artifact folder of a repository layout, holding a maven-metadata.xml file
+         */
+        boolean isArtifactFolder()
+        {
+            return metadataLastModified != 0;
+        }
+
+        /**
+         * @return the name of the folder, without its parent folders
+         */
+        String getName()
+        {
+            return relativePath.substring(relativePath.lastIndexOf(File.separatorChar) + 1);
+        }
+
+        /**
+         * @return the path of the parent folder, empty for the children of the drop folder and null for the drop folder
+         */
+        String getParentPath()
+        {
+            if (relativePath.isEmpty())
+                return null;
+            int pos = relativePath.lastIndexOf(File.separatorChar);
+            return pos < 0 ? "" : relativePath.substring(0, pos);
+        }
+    }
+
+    /**
+     * The archives listed in a build distribution, valid as long as its size and modification time are unchanged.
+     */
+    private static final class AssemblyListing
+    {
+        final long length;
+        final long lastModified;
+        final List<AssemblyEntry> entries;
+
+        AssemblyListing(long length, long lastModified, List<AssemblyEntry> entries)
+        {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.entries = entries;
+        }
+    }
+
+    private final File rootFolder;
+    private final File indexFile;
+    private Map<String, Folder> folders = new LinkedHashMap<String, Folder>();
+    /** The listings of the build distributions, by path relative to the drop folder */
+    private Map<String, AssemblyListing> assemblies = new HashMap<String, AssemblyListing>();
+    private boolean assembliesChanged = false;
+    private boolean loaded = false;
+    private int nbListedFolders = 0;
+
+    private ScanIndex(File rootFolder, File indexFile)
+    {
+        this.rootFolder = rootFolder;
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * @param rootFolder
+     *            the drop folder
+     * @param indexFolder
+     *            the folder where the index is saved, null not to persist it
+     * @return the index of the drop folder, loaded from the index folder the first time; an index folder changed
+     *         between two runs gives another index
+     */
+    static ScanIndex get(File rootFolder, File indexFolder)
+    {
+        String rootPath = rootFolder.getAbsolutePath();
+        File indexFile = indexFolder == null ? null
+            : new File(indexFolder, "scan-" + getDeliveryId(rootFolder) + ".idx");
+        String key = indexFile == null ? rootPath : rootPath + File.pathSeparator + indexFile.getAbsolutePath();
+        synchronized (instances)
+        {
+            ScanIndex index = instances.get(key);
+            if (index == null)
+            {
+                index = new ScanIndex(rootFolder, indexFile);
+                instances.put(key, index);
+            }
+            index.load();
+            return index;
+        }
+    }
+
+    /**
+     * @return the id of a drop folder in the index folder, which names its scan index and the reports of its runs
+     */
+    static String getDeliveryId(File rootFolder)
+    {
+        return hash(rootFolder.getAbsolutePath());
+    }
+
+    /**
+     * @return true when the file name is an archive or a pom the extraction is interested in
+     */
+    static boolean isFileOfInterest(String filename)
+    {
+        String lowerName = filename.toLowerCase();
+        return ArchiveTree.getArchiveType(lowerName) != null || lowerName.endsWith(".pom.xml")
+            || lowerName.endsWith(".pom") || AssemblyReader.getAssemblyType(lowerName) != null;
+    }
+
+    /**
+     * Brings the index up to date with the drop folder, listing only the folders whose modification time changed, and
+     * saves it.
+     *
+     * @param versionPolicy
+     *            the version selection policy of the artifact folders of a repository layout ({@link RepositoryLayout}
+     *            RELEASE or LATEST), only the selected version folder being scanned; null to scan all the folders
+     */
+    synchronized void refresh(String versionPolicy)
+    {
+        Map<String, Folder> refreshed = new LinkedHashMap<String, Folder>(Math.max(16, folders.size() * 2));
+        nbListedFolders = 0;
+        refresh(rootFolder, "", refreshed, versionPolicy);
+        folders = refreshed;
+
+        // the listings of the distributions removed or changed are dropped
+        Map<String, AssemblyListing> kept = new HashMap<String, AssemblyListing>();
+        for (Folder folder : folders.values())
+        {
+            for (FileEntry file : folder.files)
+            {
+                String relativePath = folder.relativePath.isEmpty() ? file.name : folder.relativePath
+                    + File.separator + file.name;
+                AssemblyListing listing = assemblies.get(relativePath);
+                if (listing != null && listing.length == file.length && listing.lastModified == file.lastModified)
+                    kept.put(relativePath, listing);
+            }
+        }
+        assemblies = kept;
+        save();
+    }
+
+    private void refresh(File folder, String relativePath, Map<String, Folder> refreshed, String versionPolicy)
+    {
+        long lastModified = folder.lastModified();
+        Folder indexed = folders.get(relativePath);
+        if (indexed == null || indexed.lastModified != lastModified || !isUpToDate(folder, indexed)
+            || (indexed.isArtifactFolder() && indexed.metadataLastModified != new File(folder,
+                RepositoryLayout.METADATA_FILENAME).lastModified()))
+        {
+            indexed = list(folder, relativePath, lastModified);
+            nbListedFolders++;
+        }
+        refreshed.put(relativePath, indexed);
+        String selectedVersion = null;
+        if (versionPolicy != null && indexed.isArtifactFolder())
+        {
+            selectedVersion = RepositoryLayout.selectVersion(indexed.releaseVersion, indexed.latestVersion,
+                versionPolicy);
+            if (selectedVersion != null && !new File(folder, selectedVersion).isDirectory())
+            {
+                // the metadata may be ahead of a partial mirror: the highest version on disk is extracted instead
+                List<String> versions = new ArrayList<String>();
+                for (String subFolder : indexed.subFolders)
+                    if (new File(folder, subFolder).isDirectory())
+                        versions.add(subFolder);
+                String fallbackVersion = RepositoryLayout.getHighestVersion(versions, versionPolicy);
+                Logging.warn("cast.dmt.extractor.mavenbuild.selectedVersionMissing", "DIR", folder, "VERSION",
+                    selectedVersion, "FALLBACK", fallbackVersion == null ? "none" : fallbackVersion);
+                if (fallbackVersion == null)
+                    return;
+                selectedVersion = fallbackVersion;
+            }
+        }
+        for (String subFolder : indexed.subFolders)
+        {
+            // the other versions of an artifact are not even checked
+            if (selectedVersion != null && !selectedVersion.equals(subFolder))
+                continue;
+            File subFolderFile = new File(folder, subFolder);
+            String subFolderPath = relativePath.isEmpty() ? subFolder : relativePath + File.separator + subFolder;
+            if (subFolderFile.isDirectory())
+                refresh(subFolderFile, subFolderPath, refreshed, versionPolicy);
+        }
+    }
+
+    /**
+     * @return true when the files of interest of an indexed folder still have their size and modification time
+     */
+    private static boolean isUpToDate(File folder, Folder indexed)
+    {
+        for (FileEntry file : indexed.files)
+        {
+            File f = new File(folder, file.name);
+            if (f.length() != file.length || f.lastModified() != file.lastModified)
+                return false;
+        }
+        return true;
+    }
+
+    private static Folder list(File folder, String relativePath, long lastModified)
+    {
+        List<String> subFolders = new ArrayList<String>();
+        List<FileEntry> files = new ArrayList<FileEntry>();
+        File metadataFile = new File(folder, RepositoryLayout.METADATA_FILENAME);
+        String[] versions = metadataFile.isFile() ? RepositoryLayout.readVersions(metadataFile) : null;
+        if (versions != null && versions[1] != null)
+        {
+            // artifact folder of a repository layout: the version folders are listed without being checked, only the
+            // names of files of interest being checked, for the flat layout
+            String[] names = folder.list();
+            if (names != null)
+            {
+                for (String name : names)
+                {
+                    if (RepositoryLayout.isMetadataFile(name))
+                        continue;
+                    File f = isFileOfInterest(name) ? new File(folder, name) : null;
+                    if (f != null && f.isFile())
+                        files.add(new FileEntry(name, f.length(), f.lastModified()));
+                    else
+                        subFolders.add(name);
+                }
+            }
+            return new Folder(relativePath, lastModified, subFolders, files, metadataFile.lastModified(), versions[0],
+                versions[1]);
+        }
+
+        File[] children = folder.listFiles();
+        if (children == null)
+            Logging.warn("cast.dmt.extractor.mavenbuild.directoryListingFailure", "DIR", folder);
+        else
+        {
+            for (File f : children)
+            {
+                if (f.isDirectory())
+                    subFolders.add(f.getName());
+                else if (isFileOfInterest(f.getName()))
+                    files.add(new FileEntry(f.getName(), f.length(), f.lastModified()));
+            }
+        }
+        return new Folder(relativePath, lastModified, subFolders, files, 0, null, null);
+    }
+
+    /**
+     * @return the folders of the index, in scan order
+     */
+    synchronized Collection<Folder> getFolders()
+    {
+        return new ArrayList<Folder>(folders.values());
+    }
+
+    /**
+     * @return the indexed folder when it is still up to date, null otherwise
+     */
+    synchronized Folder getFolder(File folder)
+    {
+        String relativePath = getRelativePath(folder);
+        if (relativePath == null)
+            return null;
+        Folder indexed = folders.get(relativePath);
+        if (indexed == null || indexed.lastModified != folder.lastModified() || !isUpToDate(folder, indexed))
+            return null;
+        return indexed;
+    }
+
+    /**
+     * @return the path relative to the drop folder, null for a file outside of it
+     */
+    private String getRelativePath(File file)
+    {
+        String rootPath = rootFolder.getAbsolutePath();
+        String path = file.getAbsolutePath();
+        if (!path.startsWith(rootPath))
+            return null;
+        return path.length() == rootPath.length() ? "" : path.substring(rootPath.length() + 1);
+    }
+
+    /**
+     * @return the archives and poms of a build distribution of the drop folder, in the distribution order; the
+     *         distribution is only read when it is not listed in the index or when it changed
+     */
+    List<AssemblyEntry> getAssemblyEntries(File assembly) throws IOException
+    {
+        String relativePath = getRelativePath(assembly);
+        long length = assembly.length();
+        long lastModified = assembly.lastModified();
+        synchronized (this)
+        {
+            AssemblyListing listing = relativePath == null ? null : assemblies.get(relativePath);
+            if (listing != null && listing.length == length && listing.lastModified == lastModified)
+                return listing.entries;
+        }
+        // the distribution is decompressed out of the lock
+        List<AssemblyEntry> entries = AssemblyReader.listEntries(assembly);
+        if (relativePath != null)
+        {
+            synchronized (this)
+            {
+                assemblies.put(relativePath, new AssemblyListing(length, lastModified, entries));
+                assembliesChanged = true;
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Saves the index when distributions have been listed since it was saved.
+     */
+    synchronized void saveAssemblies()
+    {
+        if (assembliesChanged)
+            save();
+    }
+
+    /**
+     * @return the number of folders listed by the last refresh, the other ones being taken from the index
+     */
+    synchronized int getNbListedFolders()
+    {
+        return nbListedFolders;
+    }
+
+    private void load()
+    {
+        if (loaded || indexFile == null || !indexFile.isFile())
+        {
+            loaded = true;
+            return;
+        }
+        loaded = true;
+        try
+        {
+            DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+            try
+            {
+                if (input.readInt() != FORMAT_VERSION || !input.readUTF().equals(rootFolder.getAbsolutePath()))
+                    return;
+                int nbFolders = input.readInt();
+                Map<String, Folder> loadedFolders = new LinkedHashMap<String, Folder>(nbFolders * 2);
+                for (int i = 0; i < nbFolders; i++)
+                {
+                    String relativePath = input.readUTF();
+                    long lastModified = input.readLong();
+                    int nbSubFolders = input.readInt();
+                    List<String> subFolders = new ArrayList<String>(nbSubFolders);
+                    for (int j = 0; j < nbSubFolders; j++)
+                        subFolders.add(input.readUTF());
+                    int nbFiles = input.readInt();
+                    List<FileEntry> files = new ArrayList<FileEntry>(nbFiles);
+                    for (int j = 0; j < nbFiles; j++)
+                        files.add(new FileEntry(input.readUTF(), input.readLong(), input.readLong()));
+                    long metadataLastModified = input.readLong();
+                    String releaseVersion = input.readBoolean() ? input.readUTF() : null;
+                    String latestVersion = input.readBoolean() ? input.readUTF() : null;
+                    loadedFolders.put(relativePath, new Folder(relativePath, lastModified, subFolders, files,
+                        metadataLastModified, releaseVersion, latestVersion));
+                }
+                int nbAssemblies = input.readInt();
+                Map<String, AssemblyListing> loadedAssemblies = new HashMap<String, AssemblyListing>(nbAssemblies * 2);
+                for (int i = 0; i < nbAssemblies; i++)
+                {
+                    String relativePath = input.readUTF();
+                    File assembly = new File(rootFolder, relativePath);
+                    long length = input.readLong();
+                    long lastModified = input.readLong();
+                    int nbEntries = input.readInt();
+                    List<AssemblyEntry> entries = new ArrayList<AssemblyEntry>(nbEntries);
+                    for (int j = 0; j < nbEntries; j++)
+                    {
+                        String[] entryNames = new String[input.readInt()];
+                        for (int k = 0; k < entryNames.length; k++)
+                            entryNames[k] = input.readUTF();
+                        entries.add(new AssemblyEntry(assembly, entryNames, input.readInt(), input.readLong()));
+                    }
+                    loadedAssemblies.put(relativePath, new AssemblyListing(length, lastModified, entries));
+                }
+                folders = loadedFolders;
+                assemblies = loadedAssemblies;
+            }
+            finally
+            {
+                input.close();
+            }
+        }
+        catch (IOException e)
+        {
+            // a corrupted index is rebuilt by the next refresh
+            Logging.warn("cast.dmt.extractor.mavenbuild.scanIndexNotReadable", "FILE", indexFile);
+        }
+    }
+
+    private void save()
+    {
+        assembliesChanged = false;
+        if (indexFile == null)
+            return;
+        File tempFile = null;
+        try
+        {
+            indexFile.getParentFile().mkdirs();
+            // the processes of a sharded extraction may save the same index
+            tempFile = File.createTempFile(indexFile.getName(), ".tmp", indexFile.getParentFile());
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            try
+            {
+                output.writeInt(FORMAT_VERSION);
+                output.writeUTF(rootFolder.getAbsolutePath());
+                output.writeInt(folders.size());
+                for (Folder folder : folders.values())
+                {
+                    output.writeUTF(folder.relativePath);
+                    output.writeLong(folder.lastModified);
+                    output.writeInt(folder.subFolders.size());
+                    for (String subFolder : folder.subFolders)
+                        output.writeUTF(subFolder);
+                    output.writeInt(folder.files.size());
+                    for (FileEntry file : folder.files)
+                    {
+                        output.writeUTF(file.name);
+                        output.writeLong(file.length);
+                        output.writeLong(file.lastModified);
+                    }
+                    output.writeLong(folder.metadataLastModified);
+                    writeOptionalUTF(output, folder.releaseVersion);
+                    writeOptionalUTF(output, folder.latestVersion);
+                }
+                output.writeInt(assemblies.size());
+                for (Map.Entry<String, AssemblyListing> assembly : assemblies.entrySet())
+                {
+                    AssemblyListing listing = assembly.getValue();
+                    output.writeUTF(assembly.getKey());
+                    output.writeLong(listing.length);
+                    output.writeLong(listing.lastModified);
+                    output.writeInt(listing.entries.size());
+                    for (AssemblyEntry entry : listing.entries)
+                    {
+                        output.writeInt(entry.entryNames.length);
+                        for (String entryName : entry.entryNames)
+                            output.writeUTF(entryName);
+                        output.writeInt(entry.position);
+                        output.writeLong(entry.length());
+                    }
+                }
+            }
+            finally
+            {
+                output.close();
+            }
+            indexFile.delete();
+            if (!tempFile.renameTo(indexFile))
+                tempFile.delete();
+        }
+        catch (IOException e)
+        {
+            if (tempFile != null)
+                tempFile.delete();
+            Logging.warn("cast.dmt.extractor.mavenbuild.scanIndexNotWritable", "FILE", indexFile);
+        }
+    }
+
+    private static void writeOptionalUTF(DataOutputStream output, String value) throws IOException
+    {
+        output.writeBoolean(value != null);
+        if (value != null)
+            output.writeUTF(value);
+    }
+
+    private static String hash(String path)
+    {
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            return new BigInteger(1, digest.digest(path.getBytes("UTF-8"))).toString(16);
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            return Integer.toHexString(path.hashCode());
+        }
+        catch (IOException e)
+        {
+            return Integer.toHexString(path.hashCode());
+        }
+    }
+}
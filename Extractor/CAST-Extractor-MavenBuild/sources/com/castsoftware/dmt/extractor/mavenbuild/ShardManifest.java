@@ -0,0 +1,264 @@
+package com.castsoftware.dmt.extractor.mavenbuild;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+/**
+ * The {@link ShardManifest} class is the part of a delivery extracted by one process of a sharded extraction. <BR>
+ * The delivery keys are spread over the shards by a hash of their artifact (the key without its version), so that a
+ * container, its matching jar and the other versions extracted in the same module folder always land in the same shard,
+ * whatever the machine. Each shard writes the keys and archives it extracted, with the size and the fingerprint of
+ * the whole plan; {@link #check(File)} then verifies that the shards together cover the plan without overlap. <BR>
+ * Usage of the merge check: ShardManifest manifestFolder
+ */
+public final class ShardManifest
+{
+    private static final String FILENAME_PREFIX = "shard-";
+    private static final String FILENAME_SUFFIX = ".manifest";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    final int nbShards;
+    final int shard;
+    int planSize;
+    String planFingerprint;
+    boolean complete = true;
+    /** The archives of each key of the shard, relative to the drop folder */
+    final Map<String, List<String>> archives = new TreeMap<String, List<String>>();
+
+    ShardManifest(int nbShards, int shard)
+    {
+        this.nbShards = nbShards;
+        this.shard = shard;
+    }
+
+    /**
+     * @return true when the key belongs to the shard
+     */
+    boolean isInShard(String key)
+    {
+        return getShard(key, nbShards) == shard;
+    }
+
+    /**
+     * @return the shard of a delivery key ("folders:name-version"), the same whatever the file separator of the
+     *         machine
+     */
+    static int getShard(String key, int nbShards)
+    {
+        key = key.replace('\\', '/');
+        String artifact = key;
+        int pos = key.lastIndexOf("-");
+        if (pos > key.indexOf(":"))
+            artifact = key.substring(0, pos);
+        CRC32 crc = new CRC32();
+        crc.update(artifact.getBytes(UTF8));
+        return (int) (crc.getValue() % nbShards);
+    }
+
+    /**
+     * Records the keys of the whole plan, before the keys of the other shards are removed.
+     */
+    void setPlan(Collection<String> keys)
+    {
+        planSize = keys.size();
+        planFingerprint = getFingerprint(keys);
+    }
+
+    void addArchive(String key, String archivePath)
+    {
+        key = key.replace('\\', '/');
+        List<String> keyArchives = archives.get(key);
+        if (keyArchives == null)
+        {
+            keyArchives = new ArrayList<String>();
+            archives.put(key, keyArchives);
+        }
+        keyArchives.add(archivePath);
+    }
+
+    /**
+     * @return the manifest file of the shard in the manifest folder
+     */
+    File getFile(File manifestFolder)
+    {
+        return new File(manifestFolder, FILENAME_PREFIX + shard + "-of-" + nbShards + FILENAME_SUFFIX);
+    }
+
+    void write(File manifestFile) throws IOException
+    {
+        manifestFile.getParentFile().mkdirs();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(manifestFile), UTF8);
+        try
+        {
+            writer.write("shards=" + nbShards + "\n");
+            writer.write("shard=" + shard + "\n");
+            writer.write("plan=" + planSize + "\n");
+            writer.write("fingerprint=" + planFingerprint + "\n");
+            writer.write("complete=" + complete + "\n");
+            for (Map.Entry<String, List<String>> entry : archives.entrySet())
+                for (String archivePath : entry.getValue())
+                    writer.write(entry.getKey() + "\t" + archivePath + "\n");
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+
+    static ShardManifest read(File manifestFile) throws IOException
+    {
+        Map<String, String> header = new HashMap<String, String>();
+        List<String[]> lines = new ArrayList<String[]>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(manifestFile), UTF8));
+        try
+        {
+            for (String line = reader.readLine(); line != null; line = reader.readLine())
+            {
+                int pos = line.indexOf('\t');
+                if (pos >= 0)
+                    lines.add(new String[] { line.substring(0, pos), line.substring(pos + 1) });
+                else if (line.indexOf('=') > 0)
+                    header.put(line.substring(0, line.indexOf('=')), line.substring(line.indexOf('=') + 1));
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+        try
+        {
+            ShardManifest manifest = new ShardManifest(Integer.parseInt(header.get("shards")),
+                Integer.parseInt(header.get("shard")));
+            manifest.planSize = Integer.parseInt(header.get("plan"));
+            manifest.planFingerprint = header.get("fingerprint");
+            manifest.complete = Boolean.parseBoolean(header.get("complete"));
+            for (String[] line : lines)
+                manifest.addArchive(line[0], line[1]);
+            return manifest;
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IOException("Invalid shard manifest: " + manifestFile);
+        }
+    }
+
+    /**
+     * Checks that the shard manifests of a folder cover the whole plan, each key and each archive being extracted by
+     * exactly one shard.
+     *
+     * @return the problems found, empty when the shards are consistent
+     */
+    static List<String> check(File manifestFolder) throws IOException
+    {
+        List<String> problems = new ArrayList<String>();
+        List<ShardManifest> manifests = new ArrayList<ShardManifest>();
+        File[] files = manifestFolder.listFiles();
+        if (files != null)
+            for (File f : files)
+                if (f.getName().startsWith(FILENAME_PREFIX) && f.getName().endsWith(FILENAME_SUFFIX))
+                    manifests.add(read(f));
+        if (manifests.isEmpty())
+        {
+            problems.add("No shard manifest in " + manifestFolder);
+            return problems;
+        }
+
+        ShardManifest first = manifests.get(0);
+        boolean[] seen = new boolean[first.nbShards];
+        Map<String, Integer> keyShards = new HashMap<String, Integer>();
+        Map<String, Integer> archiveShards = new HashMap<String, Integer>();
+        for (ShardManifest manifest : manifests)
+        {
+            if (manifest.nbShards != first.nbShards || manifest.planSize != first.planSize
+                || !manifest.planFingerprint.equals(first.planFingerprint))
+            {
+                problems.add("Shard " + manifest.shard + " was planned on another delivery or shard count");
+                continue;
+            }
+            if (manifest.shard < 0 || manifest.shard >= seen.length || seen[manifest.shard])
+            {
+                problems.add("Shard " + manifest.shard + " is duplicated or out of range");
+                continue;
+            }
+            seen[manifest.shard] = true;
+            if (!manifest.complete)
+                problems.add("Shard " + manifest.shard + " did not complete its extraction");
+            for (Map.Entry<String, List<String>> entry : manifest.archives.entrySet())
+            {
+                Integer otherShard = keyShards.put(entry.getKey(), manifest.shard);
+                if (otherShard != null)
+                    problems.add("Key " + entry.getKey() + " is extracted by shards " + otherShard + " and "
+                        + manifest.shard);
+                for (String archivePath : entry.getValue())
+                {
+                    otherShard = archiveShards.put(archivePath, manifest.shard);
+                    if (otherShard != null)
+                        problems.add("Archive " + archivePath + " is extracted by shards " + otherShard + " and "
+                            + manifest.shard);
+                }
+            }
+        }
+        for (int i = 0; i < seen.length; i++)
+            if (!seen[i])
+                problems.add("Shard " + i + " has no manifest");
+        if (problems.isEmpty()
+            && (keyShards.size() != first.planSize || !getFingerprint(keyShards.keySet()).equals(first.planFingerprint)))
+            problems.add("The shards extracted " + keyShards.size() + " keys, the plan has " + first.planSize);
+        return problems;
+    }
+
+    private static String getFingerprint(Collection<String> keys)
+    {
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            Set<String> portableKeys = new TreeSet<String>();
+            for (String key : keys)
+                portableKeys.add(key.replace('\\', '/'));
+            for (String key : portableKeys)
+            {
+                digest.update(key.getBytes(UTF8));
+                digest.update((byte) '\n');
+            }
+            return String.format("%032x", new BigInteger(1, digest.digest()));
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length != 1)
+        {
+            System.err.println("Usage: ShardManifest manifestFolder");
+            System.exit(2);
+        }
+        List<String> problems = check(new File(args[0]));
+        for (String problem : problems)
+            System.out.println(problem);
+        if (!problems.isEmpty())
+            System.exit(1);
+        System.out.println("The shards cover the whole delivery");
+    }
+}
@@ -0,0 +1,67 @@
+package com.castsoftware.dmt.extractor.mavenbuild;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The {@link StatisticsOutputStream} class counts the bytes and lines of an extracted file while it is written, and adds
+ * them to the {@link ModuleStatistics} of its module when the file is closed.
+ */
+class StatisticsOutputStream extends FilterOutputStream
+{
+    private final ModuleStatistics statistics;
+    private final String path;
+    private long bytes = 0;
+    private long lines = 0;
+    private boolean binary = false;
+    private int last = '\n';
+    private boolean closed = false;
+
+    StatisticsOutputStream(OutputStream out, ModuleStatistics statistics, String path)
+    {
+        super(out);
+        this.statistics = statistics;
+        this.path = path;
+    }
+
+    @Override
+    public void write(int b) throws IOException
+    {
+        out.write(b);
+        count(b);
+        bytes++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+        out.write(b, off, len);
+        if (!binary)
+            for (int i = off; i < off + len; i++)
+                count(b[i]);
+        bytes += len;
+    }
+
+    private void count(int b)
+    {
+        if (b == '\n')
+            lines++;
+        else if (b == 0)
+            binary = true;
+        last = b;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (closed)
+            return;
+        closed = true;
+        super.close();
+        if (binary)
+            statistics.addFile(path, bytes, -1);
+        else
+            statistics.addFile(path, bytes, last == '\n' ? lines : lines + 1);
+    }
+}
@@ -0,0 +1,218 @@
+package com.castsoftware.dmt.extractor.mavenbuild;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * The {@link TarInputStream} class reads the entries of a tar stream one after the other, like a ZipInputStream: the
+ * stream reads the content of the current entry. <BR>
+ * The ustar, GNU long name and pax path headers are supported, which covers the tar files of the Maven assembly plugin.
+ */
+final class TarInputStream extends InputStream
+{
+    private static final int BLOCK_SIZE = 512;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * An entry of a tar stream.
+     */
+    static final class Entry
+    {
+        final String name;
+        final long size;
+        final boolean isFile;
+
+        Entry(String name, long size, boolean isFile)
+        {
+            this.name = name;
+            this.size = size;
+            this.isFile = isFile;
+        }
+    }
+
+    private final InputStream in;
+    private final byte[] header = new byte[BLOCK_SIZE];
+    private long remaining = 0;
+    private long padding = 0;
+
+    TarInputStream(InputStream in)
+    {
+        this.in = in;
+    }
+
+    /**
+     * Skips the rest of the current entry and reads the header of the next one.
+     *
+     * @return the next entry, null at the end of the stream
+     */
+    Entry getNextEntry() throws IOException
+    {
+        String longName = null;
+        while (true)
+        {
+            skipFully(remaining + padding);
+            remaining = 0;
+            padding = 0;
+            if (!readHeader())
+                return null;
+            long size = parseSize();
+            remaining = size;
+            padding = (BLOCK_SIZE - size % BLOCK_SIZE) % BLOCK_SIZE;
+            byte type = header[156];
+            if (type == 'L')
+            {
+                // GNU long name of the next entry
+                longName = readContent(size).trim();
+                continue;
+            }
+            if (type == 'x')
+            {
+                String path = parsePaxPath(readContent(size));
+                if (path != null)
+                    longName = path;
+                continue;
+            }
+            if (type == 'g' || type == 'K')
+                continue;
+            String name = longName != null ? longName : parseName();
+            return new Entry(name, size, type == '0' || type == 0 || type == '7');
+        }
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        if (remaining <= 0)
+            return -1;
+        int b = in.read();
+        if (b < 0)
+            throw new EOFException("Truncated tar entry");
+        remaining--;
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        if (remaining <= 0)
+            return -1;
+        int n = in.read(b, off, (int) Math.min(len, remaining));
+        if (n < 0)
+            throw new EOFException("Truncated tar entry");
+        remaining -= n;
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        in.close();
+    }
+
+    private boolean readHeader() throws IOException
+    {
+        int n = 0;
+        int read;
+        while (n < BLOCK_SIZE && (read = in.read(header, n, BLOCK_SIZE - n)) > 0)
+            n += read;
+        if (n == 0)
+            return false;
+        if (n < BLOCK_SIZE)
+            throw new EOFException("Truncated tar header");
+        // the end of the archive is marked by zero blocks
+        for (byte b : header)
+            if (b != 0)
+                return true;
+        return false;
+    }
+
+    private String parseName()
+    {
+        String name = parseString(0, 100);
+        if ("ustar".equals(parseString(257, 5)))
+        {
+            String prefix = parseString(345, 155);
+            if (!prefix.isEmpty())
+                name = prefix + "/" + name;
+        }
+        return name;
+    }
+
+    private long parseSize()
+    {
+        // sizes over 8 GB are stored in base 256
+        if ((header[124] & 0x80) != 0)
+        {
+            long size = 0;
+            for (int i = 125; i < 136; i++)
+                size = size << 8 | header[i] & 0xFF;
+            return size;
+        }
+        long size = 0;
+        for (int i = 124; i < 136; i++)
+        {
+            byte b = header[i];
+            if (b >= '0' && b <= '7')
+                size = size * 8 + (b - '0');
+            else if (b == 0 || (b == ' ' && size > 0))
+                break;
+        }
+        return size;
+    }
+
+    private String parseString(int offset, int length)
+    {
+        int end = offset;
+        while (end < offset + length && header[end] != 0)
+            end++;
+        return new String(header, offset, end - offset, UTF8);
+    }
+
+    private String readContent(long size) throws IOException
+    {
+        byte[] content = new byte[(int) size];
+        int n = 0;
+        int read;
+        while (n < content.length && (read = read(content, n, content.length - n)) > 0)
+            n += read;
+        int end = n;
+        while (end > 0 && content[end - 1] == 0)
+            end--;
+        return new String(content, 0, end, UTF8);
+    }
+
+    /**
+     * @return the path of a pax extended header, null when it does not hold one
+     */
+    private static String parsePaxPath(String records)
+    {
+        for (String record : records.split("\n"))
+        {
+            int pos = record.indexOf(" path=");
+            if (pos > 0)
+                return record.substring(pos + " path=".length());
+        }
+        return null;
+    }
+
+    private void skipFully(long n) throws IOException
+    {
+        byte[] buf = null;
+        while (n > 0)
+        {
+            long skipped = in.skip(n);
+            if (skipped <= 0)
+            {
+                if (buf == null)
+                    buf = new byte[8192];
+                int read = in.read(buf, 0, (int) Math.min(n, buf.length));
+                if (read < 0)
+                    throw new EOFException("Truncated tar entry");
+                skipped = read;
+            }
+            n -= skipped;
+        }
+    }
+}
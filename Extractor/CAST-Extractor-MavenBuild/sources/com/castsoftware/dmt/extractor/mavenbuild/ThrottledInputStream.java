@@ -0,0 +1,46 @@
+package com.castsoftware.dmt.extractor.mavenbuild;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The {@link ThrottledInputStream} class limits the bandwidth of the read bytes with an {@link IoThrottle}.
+ */
+class ThrottledInputStream extends FilterInputStream
+{
+    private final IoThrottle throttle;
+
+    ThrottledInputStream(InputStream in, IoThrottle throttle)
+    {
+        super(in);
+        this.throttle = throttle;
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        int b = in.read();
+        if (b >= 0)
+            throttle.acquire(1);
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        int n = in.read(b, off, len);
+        if (n > 0)
+            throttle.acquire(n);
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException
+    {
+        long skipped = in.skip(n);
+        if (skipped > 0)
+            throttle.acquire(skipped);
+        return skipped;
+    }
+}
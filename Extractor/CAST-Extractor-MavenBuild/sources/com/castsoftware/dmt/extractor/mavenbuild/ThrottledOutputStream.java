@@ -0,0 +1,33 @@
+package com.castsoftware.dmt.extractor.mavenbuild;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The {@link ThrottledOutputStream} class limits the bandwidth of the written bytes with an {@link IoThrottle}.
+ */
+class ThrottledOutputStream extends FilterOutputStream
+{
+    private final IoThrottle throttle;
+
+    ThrottledOutputStream(OutputStream out, IoThrottle throttle)
+    {
+        super(out);
+        this.throttle = throttle;
+    }
+
+    @Override
+    public void write(int b) throws IOException
+    {
+        throttle.acquire(1);
+        out.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+        throttle.acquire(len);
+        out.write(b, off, len);
+    }
+}
@@ -0,0 +1,238 @@
+package com.castsoftware.dmt.extractor.mavenbuild;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+/**
+ * The {@link ZipCentralDirectory} class lists the entries of an archive from its central directory, without inflating
+ * any entry. <BR>
+ * An archive nested in another one has no random access: its entries are listed from their local headers while it is
+ * streamed, the entries whose size is in their header being skipped without being inflated, and the reading stops as
+ * soon as its central directory is reached.
+ */
+final class ZipCentralDirectory
+{
+    private static final int LOCAL_SIGNATURE = 0x04034b50;
+    private static final int ENTRY_SIGNATURE = 0x02014b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int DESCRIPTOR_SIGNATURE = 0x08074b50;
+    private static final int LOCAL_SIZE = 30;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final int DATA_DESCRIPTOR_FLAG = 8;
+    private static final int BUFFER_SIZE = 8192;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private ZipCentralDirectory()
+    {
+        // NOP
+    }
+
+    /**
+     * @return the names of the entries of the archive file
+     */
+    static List<String> readEntryNames(File archive) throws IOException
+    {
+        List<String> names = new ArrayList<String>();
+        ZipFile zipFile = new ZipFile(archive);
+        try
+        {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements())
+                names.add(entries.nextElement().getName());
+        }
+        finally
+        {
+            zipFile.close();
+        }
+        return names;
+    }
+
+    /**
+     * @param inputStream
+     *            the content of a nested archive, read up to its central directory
+     * @return the names of the entries of the archive, or null when the stream ends before its central directory
+     */
+    static List<String> readEntryNames(InputStream inputStream) throws IOException
+    {
+        PushbackInputStream in = new PushbackInputStream(inputStream, BUFFER_SIZE);
+        byte[] header = new byte[LOCAL_SIZE];
+        byte[] buf = new byte[BUFFER_SIZE];
+        List<String> names = new ArrayList<String>();
+        Inflater inflater = null;
+        try
+        {
+            while (true)
+            {
+                if (!readFully(in, header, 0, 4))
+                    return null;
+                int signature = readInt(header, 0);
+                if (signature == ENTRY_SIGNATURE || signature == END_SIGNATURE)
+                    return names;
+                if (signature != LOCAL_SIGNATURE)
+                    return null;
+                if (!readFully(in, header, 4, LOCAL_SIZE - 4))
+                    return null;
+                int flags = readShort(header, 6);
+                int method = readShort(header, 8);
+                long compressedSize = readInt(header, 18) & 0xFFFFFFFFL;
+                byte[] name = new byte[readShort(header, 26)];
+                byte[] extra = new byte[readShort(header, 28)];
+                if (!readFully(in, name, 0, name.length) || !readFully(in, extra, 0, extra.length))
+                    return null;
+                names.add(new String(name, UTF8));
+
+                if ((flags & DATA_DESCRIPTOR_FLAG) == 0)
+                {
+                    if (compressedSize == 0xFFFFFFFFL)
+                        compressedSize = getZip64CompressedSize(extra);
+                    if (compressedSize < 0 || !skipFully(in, compressedSize))
+                        return null;
+                    continue;
+                }
+
+                // the size follows the data, which has to be inflated to find its end
+                if (method != ZipEntry.DEFLATED)
+                    return null;
+                if (inflater == null)
+                    inflater = new Inflater(true);
+                else
+                    inflater.reset();
+                if (!skipDeflated(in, inflater, buf))
+                    return null;
+                if (!skipDataDescriptor(in, header))
+                    return null;
+            }
+        }
+        finally
+        {
+            if (inflater != null)
+                inflater.end();
+        }
+    }
+
+    /**
+     * Inflates a deflated entry to the end of its data, the bytes read beyond being pushed back.
+     *
+     * @return false when the stream ends before the entry
+     */
+    private static boolean skipDeflated(PushbackInputStream in, Inflater inflater, byte[] buf) throws IOException
+    {
+        byte[] output = new byte[BUFFER_SIZE];
+        int length = 0;
+        try
+        {
+            while (!inflater.finished())
+            {
+                if (inflater.needsInput())
+                {
+                    length = in.read(buf);
+                    if (length < 0)
+                        return false;
+                    inflater.setInput(buf, 0, length);
+                }
+                else if (inflater.needsDictionary())
+                    throw new ZipException("Invalid deflated entry");
+                inflater.inflate(output);
+            }
+        }
+        catch (DataFormatException e)
+        {
+            throw new ZipException(e.getMessage());
+        }
+        int remaining = inflater.getRemaining();
+        if (remaining > 0)
+            in.unread(buf, length - remaining, remaining);
+        return true;
+    }
+
+    /**
+     * Skips the data descriptor following an entry: an optional signature, the CRC and the sizes, on 4 bytes, or on 8
+     * bytes for a ZIP64 entry.
+     */
+    private static boolean skipDataDescriptor(PushbackInputStream in, byte[] header) throws IOException
+    {
+        if (!readFully(in, header, 0, 4))
+            return false;
+        if (readInt(header, 0) == DESCRIPTOR_SIGNATURE && !readFully(in, header, 0, 4))
+            return false;
+        if (!readFully(in, header, 0, 12))
+            return false;
+        // the sizes are on 8 bytes when the next record does not start after them
+        int signature = readInt(header, 8);
+        if (signature == LOCAL_SIGNATURE || signature == ENTRY_SIGNATURE || signature == END_SIGNATURE)
+            in.unread(header, 8, 4);
+        else if (!skipFully(in, 4))
+            return false;
+        return true;
+    }
+
+    /**
+     * @return the compressed size in the ZIP64 extra field of a local header, -1 when there is none
+     */
+    private static long getZip64CompressedSize(byte[] extra)
+    {
+        int pos = 0;
+        while (pos + 4 <= extra.length)
+        {
+            int id = readShort(extra, pos);
+            int size = readShort(extra, pos + 2);
+            if (id == ZIP64_EXTRA_ID && size >= 16 && pos + 20 <= extra.length)
+                return (readInt(extra, pos + 12) & 0xFFFFFFFFL) | (long) readInt(extra, pos + 16) << 32;
+            pos += 4 + size;
+        }
+        return -1;
+    }
+
+    /**
+     * @return false when the stream ends before the given number of bytes
+     */
+    private static boolean readFully(InputStream in, byte[] b, int offset, int length) throws IOException
+    {
+        while (length > 0)
+        {
+            int n = in.read(b, offset, length);
+            if (n < 0)
+                return false;
+            offset += n;
+            length -= n;
+        }
+        return true;
+    }
+
+    private static boolean skipFully(InputStream in, long length) throws IOException
+    {
+        while (length > 0)
+        {
+            long n = in.skip(length);
+            if (n <= 0)
+            {
+                if (in.read() < 0)
+                    return false;
+                n = 1;
+            }
+            length -= n;
+        }
+        return true;
+    }
+
+    private static int readShort(byte[] b, int pos)
+    {
+        return (b[pos] & 0xFF) | (b[pos + 1] & 0xFF) << 8;
+    }
+
+    private static int readInt(byte[] b, int pos)
+    {
+        return readShort(b, pos) | readShort(b, pos + 2) << 16;
+    }
+}